@@ -0,0 +1,141 @@
+package cl.dnl.intranet.ubb_scraper.benchmark;
+
+import cl.dnl.intranet.ubb_scraper.parser.NotasParser;
+import cl.dnl.intranet.ubb_scraper.parser.PaginaStreamParser;
+import cl.dnl.intranet.ubb_scraper.parser.PlanPonderacion;
+import cl.dnl.intranet.ubb_scraper.parser.ResultadoNotas;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks del parseo de las páginas de la intranet, sobre páginas reales capturadas y
+ * anonimizadas (src/test/resources/fixtures, compartidas con la intranet falsa).
+ *
+ * Se ejecutan con: mvn -Pjmh test-compile exec:exec
+ * Por defecto se agrega el profiler gc, que reporta la tasa de asignación (gc.alloc.rate.norm es
+ * lo que más conviene comparar entre versiones del parser).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ParseoBenchmark {
+
+    private static final String BASE_URI = "https://intranet.ubiobio.cl/sesion/calificaciones/";
+
+    private String paginaAsignaturas;
+    private String paginaNormal;
+    private String paginaModular;
+
+    // Documentos ya parseados, para medir solo el cálculo de notas sin el costo de jsoup.
+    private Document documentoNormal;
+    private Document documentoModular;
+    // Plan de ponderaciones ya armado, como lo deja la caché compartida por sección.
+    private PlanPonderacion planNormal;
+
+    @Setup
+    public void cargarFixtures() {
+        paginaAsignaturas = leerFixture("ver_calif_show.html");
+        paginaNormal = leerFixture("remote_ver_calif_greybox.html");
+        paginaModular = leerFixture("detalle_calificacion_modular.html");
+        documentoNormal = Jsoup.parse(paginaNormal, BASE_URI);
+        documentoModular = Jsoup.parse(paginaModular, BASE_URI);
+        planNormal = NotasParser.planPonderacion(documentoNormal, null);
+    }
+
+    /** Datos del alumno y carreras de la página inicial (lo que hace getDatosAlumno). */
+    @Benchmark
+    public Object carreras() throws IOException {
+        return PaginaStreamParser.datosAlumno(new StringReader(paginaAsignaturas), BASE_URI);
+    }
+
+    /** Tabla de asignaturas y campos ocultos de la página de una carrera. */
+    @Benchmark
+    public Object paginaCarrera() throws IOException {
+        return PaginaStreamParser.paginaCarrera(new StringReader(paginaAsignaturas), BASE_URI);
+    }
+
+    /** Cálculo del promedio de un ramo normal sobre un documento ya parseado. */
+    @Benchmark
+    public ResultadoNotas promedioNormal() {
+        return NotasParser.parseNormal(documentoNormal);
+    }
+
+    /**
+     * Cálculo del promedio de un ramo normal con el plan de la sección en caché: solo se verifica
+     * la huella de la tabla de ponderaciones y se aplican las notas.
+     */
+    @Benchmark
+    public ResultadoNotas promedioNormalConPlan() {
+        return NotasParser.aplicarPlan(NotasParser.planPonderacion(documentoNormal, planNormal), documentoNormal);
+    }
+
+    /** Cálculo del promedio de un ramo modular sobre un documento ya parseado. */
+    @Benchmark
+    public ResultadoNotas promedioModular() {
+        return NotasParser.parseModular(documentoModular);
+    }
+
+    /** Parseo de la página de notas de un ramo normal más el cálculo del promedio. */
+    @Benchmark
+    public ResultadoNotas paginaNormal() {
+        return NotasParser.parseNormal(Jsoup.parse(paginaNormal, BASE_URI));
+    }
+
+    /** Parseo de la página de notas de un ramo modular más el cálculo del promedio. */
+    @Benchmark
+    public ResultadoNotas paginaModular() {
+        return NotasParser.parseModular(Jsoup.parse(paginaModular, BASE_URI));
+    }
+
+    /**
+     * Todo el parseo de getParsedAsignaturas para una carrera, sin red: la página de la carrera y
+     * la página de notas de cada asignatura que tiene botón de calificaciones.
+     */
+    @Benchmark
+    public void getParsedAsignaturas(Blackhole bh) throws IOException {
+        PaginaStreamParser.PaginaCarrera pagina =
+                PaginaStreamParser.paginaCarrera(new StringReader(paginaAsignaturas), BASE_URI);
+        bh.consume(pagina.datosFormulario());
+        for (PaginaStreamParser.FilaAsignatura fila : pagina.filas()) {
+            if (fila.onClick() == null) continue;
+            bh.consume(NotasParser.parametrosOnClick(fila.onClick()));
+            if (fila.onClick().contains("ver_calificacion_modular")) {
+                bh.consume(NotasParser.parseModular(Jsoup.parse(paginaModular, BASE_URI)));
+            } else {
+                bh.consume(NotasParser.parseNormal(Jsoup.parse(paginaNormal, BASE_URI)));
+            }
+        }
+    }
+
+    private static String leerFixture(String nombre) {
+        try (InputStream in = ParseoBenchmark.class.getResourceAsStream("/fixtures/" + nombre)) {
+            if (in == null) {
+                throw new IllegalStateException("No se encontró el fixture " + nombre);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -3,9 +3,21 @@ package cl.dnl.intranet.ubb_scraper;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
+import java.util.Map;
+
 @SpringBootApplication
 public class UbbScraperApplication {
 	public static void main(String[] args) {
-		SpringApplication.run(UbbScraperApplication.class, args);
+		SpringApplication app = new SpringApplication(UbbScraperApplication.class);
+		// Valores por defecto; cualquier application.properties, variable de entorno o argumento los reemplaza.
+		// Con hilos virtuales cada petición HTTP (que pasa casi todo su tiempo esperando a la intranet)
+		// deja de ocupar un hilo del pool de Tomcat. Para volver al modo anterior:
+		// --spring.threads.virtual.enabled=false
+		// Las métricas (latencia por endpoint de la intranet, parseo, cachés) quedan en /actuator/prometheus.
+		app.setDefaultProperties(Map.of(
+				"spring.threads.virtual.enabled", "true",
+				"management.endpoints.web.exposure.include", "health,info,metrics,prometheus"
+		));
+		app.run(args);
 	}
 }
@@ -0,0 +1,78 @@
+package cl.dnl.intranet.ubb_scraper.config;
+
+import cl.dnl.intranet.ubb_scraper.service.Plazo;
+import org.slf4j.MDC;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Envuelve un ExecutorService para que cada tarea corra con el contexto que tenía el hilo que la
+ * envió: el MDC (por ejemplo, el "rut" de la petición) y el Plazo de la petición. Así los logs de
+ * las tareas en paralelo siguen asociados al alumno, el muestreo por RUT de logback-spring.xml
+ * también se aplica en ellas y ninguna consulta a la intranet supera el plazo de quien la pidió.
+ * El trabajo que debe seguir aunque quien lo envió ya no espere se envuelve con Plazo.sinPlazo, y el
+ * que necesita un plazo distinto del de la petición (como un stream largo) con Plazo.conPlazo.
+ */
+public class ContextoExecutorService extends AbstractExecutorService {
+
+    private final ExecutorService delegado;
+
+    public ContextoExecutorService(ExecutorService delegado) {
+        this.delegado = delegado;
+    }
+
+    @Override
+    public void execute(Runnable tarea) {
+        Map<String, String> contexto = MDC.getCopyOfContextMap();
+        Long plazo = Plazo.actual();
+        delegado.execute(() -> {
+            Map<String, String> anterior = MDC.getCopyOfContextMap();
+            Long plazoAnterior = Plazo.actual();
+            establecer(contexto);
+            Plazo.restablecer(plazo);
+            try {
+                tarea.run();
+            } finally {
+                establecer(anterior);
+                Plazo.restablecer(plazoAnterior);
+            }
+        });
+    }
+
+    private static void establecer(Map<String, String> contexto) {
+        if (contexto == null) {
+            MDC.clear();
+        } else {
+            MDC.setContextMap(contexto);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        delegado.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return delegado.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegado.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegado.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegado.awaitTermination(timeout, unit);
+    }
+}
@@ -0,0 +1,19 @@
+package cl.dnl.intranet.ubb_scraper.config;
+
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class PersistenceConfig {
+
+    // Activa el envío de INSERT en batch, para que un snapshot de notas completo se guarde en una
+    // sola ida a la BD. Si application.properties define estas propiedades, se respetan esas.
+    @Bean
+    public HibernatePropertiesCustomizer batchingCustomizer() {
+        return properties -> {
+            properties.putIfAbsent("hibernate.jdbc.batch_size", "50");
+            properties.putIfAbsent("hibernate.order_inserts", "true");
+        };
+    }
+}
@@ -0,0 +1,52 @@
+package cl.dnl.intranet.ubb_scraper.config;
+
+import cl.dnl.intranet.ubb_scraper.service.Plazo;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fija el Plazo de cada petición a /api: app.api.plazo-ms por defecto, o menos si el cliente
+ * manda la cabecera X-Plazo-Ms. Todo lo que se consulte a la intranet para responderla, también
+ * en paralelo, debe terminar dentro de ese plazo.
+ */
+@Component
+public class PlazoInterceptor implements AsyncHandlerInterceptor {
+
+    public static final String CABECERA_PLAZO = "X-Plazo-Ms";
+
+    private final long plazoMs;
+
+    public PlazoInterceptor(@Value("${app.api.plazo-ms:20000}") long plazoMs) {
+        this.plazoMs = plazoMs;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        long plazo = plazoMs;
+        String cabecera = request.getHeader(CABECERA_PLAZO);
+        if (cabecera != null) {
+            try {
+                plazo = Math.min(plazo, Math.max(0, Long.parseLong(cabecera.trim())));
+            } catch (NumberFormatException e) {
+                // Cabecera inválida: se usa el plazo por defecto.
+            }
+        }
+        Plazo.fijar(plazo, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        Plazo.limpiar();
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Plazo.limpiar();
+    }
+}
@@ -0,0 +1,51 @@
+package cl.dnl.intranet.ubb_scraper.config;
+
+import cl.dnl.intranet.ubb_scraper.service.SesionUpstreamPool;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.MDC;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.Map;
+
+/**
+ * Pone en el MDC el RUT dueño del {sessionId} de la ruta, para que cada línea de log de la
+ * petición lo incluya y para poder activar las trazas completas de un solo alumno con
+ * app.log.traza-rut (ver logback-spring.xml).
+ */
+@Component
+public class RutMdcInterceptor implements AsyncHandlerInterceptor {
+
+    public static final String CLAVE_RUT = "rut";
+
+    private final SesionUpstreamPool sesionPool;
+
+    public RutMdcInterceptor(SesionUpstreamPool sesionPool) {
+        this.sesionPool = sesionPool;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        @SuppressWarnings("unchecked")
+        Map<String, String> variables =
+                (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        String sessionId = variables != null ? variables.get("sessionId") : null;
+        String rut = sessionId != null ? sesionPool.rutDeSesion(sessionId) : null;
+        if (rut != null) {
+            MDC.put(CLAVE_RUT, rut);
+        }
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        MDC.remove(CLAVE_RUT);
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        MDC.remove(CLAVE_RUT);
+    }
+}
@@ -0,0 +1,26 @@
+package cl.dnl.intranet.ubb_scraper.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Configuration
+@EnableScheduling // Necesario para las tareas @Scheduled (por ejemplo, el refresco del periodo actual).
+public class ScrapingConfig {
+
+    // Ejecutor compartido para las peticiones a la intranet que se hacen en paralelo.
+    // Usamos hilos virtuales: cada tarea pasa casi todo su tiempo esperando la red,
+    // así que no tiene sentido reservar un hilo del sistema para cada una.
+    // Ojo: un bloque synchronized o una llamada nativa durante la espera "fija" el hilo virtual a su
+    // hilo portador. Por eso las cachés usan ReentrantLock y no synchronized. El driver de PostgreSQL
+    // (42.6+) tampoco usa synchronized en las rutas de E/S, y el pool de Hikari ya limita cuántos
+    // hilos usan la BD a la vez. Para revisar si aparecen fijaciones: -Djdk.tracePinnedThreads=short
+    // Las tareas heredan el MDC (el RUT de la petición) y el Plazo del hilo que las envía.
+    @Bean(destroyMethod = "close")
+    public ExecutorService scrapingExecutor() {
+        return new ContextoExecutorService(Executors.newVirtualThreadPerTaskExecutor());
+    }
+}
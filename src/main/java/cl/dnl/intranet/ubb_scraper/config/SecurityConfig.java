@@ -2,6 +2,7 @@ package cl.dnl.intranet.ubb_scraper.config;
 
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
@@ -25,11 +26,18 @@ public class SecurityConfig {
                         // y mantenemos solo las reglas que necesitamos.
                         .requestMatchers("/api/**", "/", "/*.html", "/css/**", "/js/**").permitAll()
                         // --- FIN DE LA CORRECCIÓN ---
+                        // Salud para el monitoreo. Las métricas muestran el uso del servicio y el
+                        // estado de la intranet, así que /actuator/prometheus, como el resto de
+                        // /actuator, pide login.
+                        .requestMatchers("/actuator/health").permitAll()
 
                         .anyRequest().authenticated()
                 )
 
                 .formLogin(form -> form.permitAll())
+                // Para que Prometheus pueda leer las métricas con basic_auth, usando el usuario de
+                // spring.security.user.name / spring.security.user.password.
+                .httpBasic(Customizer.withDefaults())
 
                 // La configuración de headers para H2 ya no es necesaria, pero no hace daño dejarla.
                 // La eliminamos para mayor limpieza.
@@ -0,0 +1,23 @@
+package cl.dnl.intranet.ubb_scraper.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    private final RutMdcInterceptor rutMdcInterceptor;
+    private final PlazoInterceptor plazoInterceptor;
+
+    public WebConfig(RutMdcInterceptor rutMdcInterceptor, PlazoInterceptor plazoInterceptor) {
+        this.rutMdcInterceptor = rutMdcInterceptor;
+        this.plazoInterceptor = plazoInterceptor;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(rutMdcInterceptor).addPathPatterns("/api/**");
+        registry.addInterceptor(plazoInterceptor).addPathPatterns("/api/**");
+    }
+}
@@ -1,14 +1,33 @@
 package cl.dnl.intranet.ubb_scraper.controller;
 
+import cl.dnl.intranet.ubb_scraper.config.RutMdcInterceptor;
+import cl.dnl.intranet.ubb_scraper.dto.AsignaturaEventoDto;
+import cl.dnl.intranet.ubb_scraper.dto.BootstrapDto;
 import cl.dnl.intranet.ubb_scraper.dto.CarreraDto;
+import cl.dnl.intranet.ubb_scraper.dto.HistorialEventoDto;
 import cl.dnl.intranet.ubb_scraper.dto.LoginRequest;
+import cl.dnl.intranet.ubb_scraper.service.GradePushService;
+import cl.dnl.intranet.ubb_scraper.service.IntranetNoDisponibleException;
+import cl.dnl.intranet.ubb_scraper.service.Plazo;
+import cl.dnl.intranet.ubb_scraper.service.ScrapingCoordinator;
+import cl.dnl.intranet.ubb_scraper.service.SesionUpstreamPool;
 import cl.dnl.intranet.ubb_scraper.service.UbbScrapingService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 import java.util.Map;
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import cl.dnl.intranet.ubb_scraper.dto.DashboardDataDto;
 import cl.dnl.intranet.ubb_scraper.dto.AsignaturaDto;
@@ -20,12 +39,28 @@ import cl.dnl.intranet.ubb_scraper.dto.AsignaturaDto;
 @CrossOrigin(origins = "*") // Permite solicitudes desde cualquier origen (útil para desarrollo; en
                             // producción mejor restringirlo.
 public class ScraperController {
+    private static final Logger log = LoggerFactory.getLogger(ScraperController.class);
+
     private final UbbScrapingService scrapingService; // Se inyecta una instancia de UbbScrapingService,
                                                      // que contiene la lógica de autenticación y
                                                     // scraping.
+    private final ScrapingCoordinator scrapingCoordinator; // Agrupa peticiones idénticas simultáneas.
+    private final ExecutorService scrapingExecutor; // Ejecuta en segundo plano los endpoints en streaming.
+    private final ObjectMapper objectMapper;
+    private final GradePushService gradePushService; // Envía los cambios de notas a los clientes suscritos.
+    private final SesionUpstreamPool sesionPool;
+
+    private static final long STREAM_TIMEOUT_MS = 60_000;
 
-    public ScraperController(UbbScrapingService scrapingService) { // Se usa una inyección por constructor.
+    public ScraperController(UbbScrapingService scrapingService, ScrapingCoordinator scrapingCoordinator,
+                             ExecutorService scrapingExecutor, ObjectMapper objectMapper,
+                             GradePushService gradePushService, SesionUpstreamPool sesionPool) { // Se usa una inyección por constructor.
         this.scrapingService = scrapingService;
+        this.scrapingCoordinator = scrapingCoordinator;
+        this.scrapingExecutor = scrapingExecutor;
+        this.objectMapper = objectMapper;
+        this.gradePushService = gradePushService;
+        this.sesionPool = sesionPool;
     }
 
     // Metodo principal handleLogin()
@@ -33,12 +68,16 @@ public class ScraperController {
     // Escucha las solicitudes POST enviadas a /api/login
     // El cuerpo de la solicitud se mapea automáticamente al DTO LoginRequest
     public ResponseEntity<Map<String, Object>> handleLogin(@RequestBody LoginRequest loginRequest) {
+        // El login no tiene sessionId en la ruta; el RUT para los logs se toma del formulario.
+        MDC.put(RutMdcInterceptor.CLAVE_RUT, loginRequest.rut());
         try {
             Map<String, Object> result = scrapingService.performLogin(loginRequest.rut(), loginRequest.password());
             boolean isSuccess = (boolean) result.get("success");
 
             if (isSuccess) { // Si el login fue exitoso, devuelve un código 200 con un mensaje de éxito
                             // y un sessionId
+                // Mientras el navegador pasa a main.html, vamos adelantando el scrape del dashboard.
+                scrapingCoordinator.precalentar((String) result.get("sessionId"));
                 return ResponseEntity.ok(Map.of(
                         "message", "Login correcto!",
                         "sessionId", result.get("sessionId")
@@ -53,8 +92,8 @@ public class ScraperController {
         } catch (Exception e) { // Si ocurre un error inesperado se captura cualquier excepción,
                                 // imprimiendo el error en consola y respondiendo con un código 500
                                 // (error del servidor).
-            e.printStackTrace();
-            return ResponseEntity.status(500).body(Map.of("message", "Error interno del servidor: " + e.getMessage()));
+            registrarError("Error en el login", e);
+            return ResponseEntity.status(codigoError(e)).body(Map.of("message", "Error interno del servidor: " + e.getMessage()));
         }
     }
 
@@ -69,9 +108,9 @@ public class ScraperController {
             return ResponseEntity.ok(asignaturasHtml);
 
         } catch (IOException e) {
-            e.printStackTrace();
+            registrarError("Error al obtener las asignaturas", e);
             // Devolvemos un mensaje de error
-            return ResponseEntity.status(500).body("Error al obtener las asignaturas: " + e.getMessage());
+            return ResponseEntity.status(codigoError(e)).body("Error al obtener las asignaturas: " + e.getMessage());
         }
     }
 
@@ -82,8 +121,8 @@ public class ScraperController {
             List<CarreraDto> carreras = scrapingService.getAvailableCareers(sessionId);
             return ResponseEntity.ok(carreras);
         } catch (IOException e) {
-            e.printStackTrace();
-            return ResponseEntity.status(500).build();
+            registrarError("Error al obtener las carreras", e);
+            return ResponseEntity.status(codigoError(e)).build();
         }
     }
 
@@ -94,8 +133,8 @@ public class ScraperController {
             String asignaturasHtml = scrapingService.getAsignaturasForCareer(sessionId, carrera);
             return ResponseEntity.ok(asignaturasHtml);
         } catch (IOException e) {
-            e.printStackTrace();
-            return ResponseEntity.status(500).body("Error al obtener las asignaturas: " + e.getMessage());
+            registrarError("Error al obtener las asignaturas de la carrera", e);
+            return ResponseEntity.status(codigoError(e)).body("Error al obtener las asignaturas: " + e.getMessage());
         }
     }
 
@@ -103,11 +142,24 @@ public class ScraperController {
     @GetMapping("/dashboard/{sessionId}")
     public ResponseEntity<DashboardDataDto> getDashboardData(@PathVariable String sessionId) {
         try {
-            DashboardDataDto dashboardData = scrapingService.getDashboardData(sessionId);
+            DashboardDataDto dashboardData = scrapingCoordinator.getDashboardData(sessionId);
             return ResponseEntity.ok(dashboardData);
         } catch (IOException e) {
-            e.printStackTrace();
-            return ResponseEntity.status(500).build();
+            registrarError("Error al obtener el dashboard", e);
+            return ResponseEntity.status(codigoError(e)).build();
+        }
+    }
+
+    // Endpoint que junta el dashboard y las asignaturas de la carrera por defecto, para que la
+    // primera carga de la pantalla principal sea una sola petición
+    @GetMapping("/bootstrap/{sessionId}")
+    public ResponseEntity<BootstrapDto> getBootstrap(@PathVariable String sessionId) {
+        try {
+            BootstrapDto bootstrap = scrapingCoordinator.getBootstrap(sessionId);
+            return ResponseEntity.ok(bootstrap);
+        } catch (IOException e) {
+            registrarError("Error al obtener los datos iniciales", e);
+            return ResponseEntity.status(codigoError(e)).build();
         }
     }
 
@@ -115,11 +167,98 @@ public class ScraperController {
     @PostMapping("/asignaturas/parsed/{sessionId}")
     public ResponseEntity<List<AsignaturaDto>> getParsedAsignaturas(@PathVariable String sessionId, @RequestBody CarreraDto carrera) {
         try {
-            List<AsignaturaDto> asignaturas = scrapingService.getParsedAsignaturas(sessionId, carrera);
+            List<AsignaturaDto> asignaturas = scrapingCoordinator.getParsedAsignaturas(sessionId, carrera);
             return ResponseEntity.ok(asignaturas);
         } catch (IOException e) {
-            e.printStackTrace();
-            return ResponseEntity.status(500).build();
+            registrarError("Error al obtener las asignaturas parseadas", e);
+            return ResponseEntity.status(codigoError(e)).build();
+        }
+    }
+
+    // Variante en streaming (NDJSON, un objeto JSON por línea) del endpoint anterior. Envía cada
+    // asignatura apenas se calcula su promedio y al final un evento "fin", así el frontend puede
+    // mostrar las filas a medida que llegan en vez de esperar a la asignatura más lenta.
+    @PostMapping(value = "/asignaturas/parsed/{sessionId}/stream", produces = "application/x-ndjson")
+    public ResponseBodyEmitter streamParsedAsignaturas(@PathVariable String sessionId, @RequestBody CarreraDto carrera) {
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(STREAM_TIMEOUT_MS);
+        scrapingExecutor.execute(() -> {
+            try {
+                List<AsignaturaDto> asignaturas = scrapingCoordinator.streamParsedAsignaturas(sessionId, carrera,
+                        (indice, asignatura) -> enviarEvento(emitter, AsignaturaEventoDto.asignatura(indice, asignatura)));
+                enviarEvento(emitter, AsignaturaEventoDto.fin(asignaturas.size()));
+            } catch (IOException | RuntimeException e) {
+                registrarError("Error al obtener las asignaturas en streaming", e);
+                enviarEvento(emitter, AsignaturaEventoDto.error("Error al obtener las asignaturas: " + e.getMessage()));
+            } finally {
+                // Siempre se cierra el stream; si no, el cliente esperaría hasta el timeout.
+                emitter.complete();
+            }
+        });
+        return emitter;
+    }
+
+    // Historial completo en streaming (NDJSON): un evento "periodo" por cada carrera, año y periodo
+    // desde el ingreso, a medida que van llegando, y al final un evento "fin". Los periodos cerrados
+    // se consultan a la intranet una sola vez; después se sirven desde la BD.
+    // El historial puede tomar más que el plazo de la petición, así que corre con un plazo propio
+    // igual al timeout del stream.
+    @GetMapping(value = "/historial/{sessionId}/stream", produces = "application/x-ndjson")
+    public ResponseBodyEmitter streamHistorial(@PathVariable String sessionId) {
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(STREAM_TIMEOUT_MS);
+        scrapingExecutor.execute(Plazo.conPlazo(STREAM_TIMEOUT_MS, TimeUnit.MILLISECONDS, () -> {
+            try {
+                int total = scrapingCoordinator.streamHistorial(sessionId, evento -> enviarEvento(emitter, evento));
+                enviarEvento(emitter, HistorialEventoDto.fin(total));
+            } catch (IOException | RuntimeException e) {
+                registrarError("Error al obtener el historial", e);
+                enviarEvento(emitter, HistorialEventoDto.error(null, null, null, "Error al obtener el historial: " + e.getMessage()));
+            } finally {
+                emitter.complete();
+            }
+        }));
+        return emitter;
+    }
+
+    // 503 si la intranet no está disponible (circuito abierto o saturada) y no había datos guardados
+    // con que responder; 504 si se agotó el plazo de la petición; 500 para cualquier otro error.
+    private static int codigoError(Exception e) {
+        if (e instanceof IntranetNoDisponibleException) {
+            return 503;
+        }
+        return e instanceof Plazo.PlazoAgotadoException ? 504 : 500;
+    }
+
+    // Que la intranet no esté disponible o no responda a tiempo es esperable (y ya lo registra el UpstreamGuard), así que no
+    // se imprime la traza completa.
+    private static void registrarError(String mensaje, Exception e) {
+        if (e instanceof IntranetNoDisponibleException || e instanceof Plazo.PlazoAgotadoException) {
+            log.warn("{}: {}", mensaje, e.getMessage());
+        } else {
+            log.error(mensaje, e);
+        }
+    }
+
+    // Cada evento se envía en una sola llamada a send() (JSON + salto de línea), para que los
+    // eventos que llegan desde distintos hilos no se mezclen.
+    private void enviarEvento(ResponseBodyEmitter emitter, Object evento) {
+        try {
+            emitter.send(objectMapper.writeValueAsString(evento) + "\n", MediaType.TEXT_PLAIN);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        } catch (IOException | IllegalStateException e) {
+            // El cliente cerró la conexión o el emisor ya terminó: el evento se descarta.
+        }
+    }
+
+    // Suscripción por Server-Sent Events: el cliente recibe un evento "cambios" con las asignaturas
+    // que cambiaron cada vez que un refresco en el servidor detecta notas nuevas para su RUT.
+    @GetMapping(value = "/suscripcion/{sessionId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> suscribirCambios(@PathVariable String sessionId) {
+        String rut = sesionPool.rutDeSesion(sessionId);
+        if (rut == null) {
+            // Sesión desconocida o expirada: el cliente debe volver a iniciar sesión.
+            return ResponseEntity.status(401).build();
         }
+        return ResponseEntity.ok(gradePushService.suscribir(rut));
     }
-}
\ No newline at end of file
+}
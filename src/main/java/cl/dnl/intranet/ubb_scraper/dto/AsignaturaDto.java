@@ -1,4 +1,11 @@
 package cl.dnl.intranet.ubb_scraper.dto;
 
-public record AsignaturaDto(String nombre, double promedio) {
+import java.util.List;
+
+// 'calificaciones' tiene la nota final de cada evaluación principal (vacía si no hay notas).
+public record AsignaturaDto(String nombre, double promedio, List<CalificacionDto> calificaciones) {
+
+    public AsignaturaDto(String nombre, double promedio) {
+        this(nombre, promedio, List.of());
+    }
 }
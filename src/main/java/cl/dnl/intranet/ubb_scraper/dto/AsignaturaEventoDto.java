@@ -0,0 +1,28 @@
+package cl.dnl.intranet.ubb_scraper.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+// Evento del endpoint de asignaturas en streaming (una línea JSON por evento).
+// tipo = "asignatura": una asignatura ya calculada y su posición en la lista.
+// tipo = "fin": ya se enviaron todas; 'total' indica cuántas eran.
+// tipo = "error": la consulta falló; 'mensaje' describe el problema.
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record AsignaturaEventoDto(
+        String tipo,
+        Integer indice,
+        AsignaturaDto asignatura,
+        Integer total,
+        String mensaje
+) {
+    public static AsignaturaEventoDto asignatura(int indice, AsignaturaDto asignatura) {
+        return new AsignaturaEventoDto("asignatura", indice, asignatura, null, null);
+    }
+
+    public static AsignaturaEventoDto fin(int total) {
+        return new AsignaturaEventoDto("fin", null, null, total, null);
+    }
+
+    public static AsignaturaEventoDto error(String mensaje) {
+        return new AsignaturaEventoDto("error", null, null, null, mensaje);
+    }
+}
@@ -0,0 +1,11 @@
+package cl.dnl.intranet.ubb_scraper.dto;
+
+import java.util.List;
+
+// Todo lo que necesita la pantalla principal en su primera carga: los datos del dashboard y las
+// asignaturas (con promedio) de la carrera por defecto. 'carrera' es null si el alumno no tiene carreras.
+public record BootstrapDto(
+        DashboardDataDto dashboard,
+        CarreraDto carrera,
+        List<AsignaturaDto> asignaturas
+) {}
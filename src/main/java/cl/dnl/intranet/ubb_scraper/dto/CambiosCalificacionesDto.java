@@ -0,0 +1,12 @@
+package cl.dnl.intranet.ubb_scraper.dto;
+
+import java.util.List;
+
+// Cambios de notas que se envían por la suscripción: solo las asignaturas que cambiaron,
+// junto con la carrera (valorCompleto) y el periodo a los que pertenecen.
+public record CambiosCalificacionesDto(
+        String carrera,
+        String ano,
+        String periodo,
+        List<AsignaturaDto> asignaturas
+) {}
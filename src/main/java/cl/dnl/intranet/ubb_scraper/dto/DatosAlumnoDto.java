@@ -0,0 +1,14 @@
+package cl.dnl.intranet.ubb_scraper.dto;
+
+import java.util.List;
+
+// Campos de la página inicial de asignaturas que usamos en varias operaciones.
+// Se guardan en caché por sesión para no descargar la misma página en cada llamada.
+public record DatosAlumnoDto(
+        String aluRut,
+        String anio,
+        String nombres,
+        String apellidos,
+        List<CarreraDto> carreras,
+        String carreraActiva  // valorCompleto de la carrera seleccionada en la intranet
+) {}
@@ -0,0 +1,35 @@
+package cl.dnl.intranet.ubb_scraper.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+// Evento del endpoint de historial en streaming (una línea JSON por evento).
+// tipo = "periodo": las asignaturas de una carrera en un año y periodo. 'guardado' indica si
+//                   vienen de un periodo cerrado ya guardado (sin consultar la intranet).
+// tipo = "error": no se pudo obtener ese periodo; 'mensaje' describe el problema.
+// tipo = "fin": ya se enviaron todos los periodos; 'total' indica cuántos eran.
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record HistorialEventoDto(
+        String tipo,
+        String carrera,
+        String ano,
+        String periodo,
+        List<AsignaturaDto> asignaturas,
+        Boolean guardado,
+        Integer total,
+        String mensaje
+) {
+    public static HistorialEventoDto periodo(String carrera, String ano, String periodo,
+                                             List<AsignaturaDto> asignaturas, boolean guardado) {
+        return new HistorialEventoDto("periodo", carrera, ano, periodo, asignaturas, guardado, null, null);
+    }
+
+    public static HistorialEventoDto error(String carrera, String ano, String periodo, String mensaje) {
+        return new HistorialEventoDto("error", carrera, ano, periodo, null, null, null, mensaje);
+    }
+
+    public static HistorialEventoDto fin(int total) {
+        return new HistorialEventoDto("fin", null, null, null, null, null, total, null);
+    }
+}
@@ -0,0 +1,15 @@
+package cl.dnl.intranet.ubb_scraper.event;
+
+import cl.dnl.intranet.ubb_scraper.dto.AsignaturaDto;
+
+import java.util.List;
+
+// Se publica cuando un refresco de notas encuentra diferencias con el snapshot anterior.
+// 'cambios' contiene solo las asignaturas nuevas o cuyas notas/promedio cambiaron.
+public record CalificacionesCambiadasEvent(
+        String rut,
+        String carrera,
+        String ano,
+        String periodo,
+        List<AsignaturaDto> cambios
+) {}
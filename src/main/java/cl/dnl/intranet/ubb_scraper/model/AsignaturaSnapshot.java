@@ -0,0 +1,126 @@
+package cl.dnl.intranet.ubb_scraper.model;
+
+import cl.dnl.intranet.ubb_scraper.dto.CalificacionDto;
+import jakarta.persistence.*;
+
+import java.time.Instant;
+import java.util.List;
+
+@Entity
+@Table(name = "asignatura_snapshots",
+       indexes = @Index(name = "idx_snapshot_alumno", columnList = "rut, carrera, ano, periodo"),
+       // Una sola fila por posición: si dos guardados del mismo snapshot se cruzan, uno falla en vez de duplicar filas.
+       uniqueConstraints = @UniqueConstraint(name = "uk_snapshot_orden", columnNames = {"rut", "carrera", "ano", "periodo", "orden"}))
+// Última versión conocida de una asignatura (promedio y notas) de un alumno, para una carrera y
+// un periodo. Todas las filas de un mismo (rut, carrera, ano, periodo) forman un snapshot y se
+// reemplazan juntas.
+public class AsignaturaSnapshot {
+
+    @Id
+    // Secuencia (y no IDENTITY) para que Hibernate pueda insertar un snapshot completo en un solo batch JDBC.
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "asignatura_snapshot_seq")
+    @SequenceGenerator(name = "asignatura_snapshot_seq", sequenceName = "asignatura_snapshot_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(nullable = false)
+    private String rut;
+
+    @Column(nullable = false) // valorCompleto de la carrera, ej: "29040-2-2021-1"
+    private String carrera;
+
+    @Column(nullable = false)
+    private String ano;
+
+    @Column(nullable = false)
+    private String periodo;
+
+    @Column(nullable = false) // Posición de la asignatura en la tabla de la intranet
+    private int orden;
+
+    @Column(nullable = false)
+    private String nombre;
+
+    private double promedio;
+
+    @Convert(converter = CalificacionesConverter.class)
+    @Column(columnDefinition = "text")
+    private List<CalificacionDto> calificaciones;
+
+    @Column(nullable = false)
+    private Instant actualizadoEn;
+
+    // Periodo ya cursado y cerrado: sus notas no cambian, así que no se vuelve a consultar ni se reemplaza.
+    @Column(nullable = false, columnDefinition = "boolean default false")
+    private boolean inmutable;
+
+    // --- Constructores ---
+
+    // Constructor vacío requerido por JPA.
+    public AsignaturaSnapshot() {
+    }
+
+    public AsignaturaSnapshot(String rut, String carrera, String ano, String periodo, int orden,
+                              String nombre, double promedio, List<CalificacionDto> calificaciones, Instant actualizadoEn) {
+        this(rut, carrera, ano, periodo, orden, nombre, promedio, calificaciones, actualizadoEn, false);
+    }
+
+    public AsignaturaSnapshot(String rut, String carrera, String ano, String periodo, int orden, String nombre,
+                              double promedio, List<CalificacionDto> calificaciones, Instant actualizadoEn, boolean inmutable) {
+        this.rut = rut;
+        this.carrera = carrera;
+        this.ano = ano;
+        this.periodo = periodo;
+        this.orden = orden;
+        this.nombre = nombre;
+        this.promedio = promedio;
+        this.calificaciones = calificaciones;
+        this.actualizadoEn = actualizadoEn;
+        this.inmutable = inmutable;
+    }
+
+    // --- Getters ---
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getRut() {
+        return rut;
+    }
+
+    public String getCarrera() {
+        return carrera;
+    }
+
+    public String getAno() {
+        return ano;
+    }
+
+    public String getPeriodo() {
+        return periodo;
+    }
+
+    public int getOrden() {
+        return orden;
+    }
+
+    public String getNombre() {
+        return nombre;
+    }
+
+    public double getPromedio() {
+        return promedio;
+    }
+
+    public List<CalificacionDto> getCalificaciones() {
+        return calificaciones;
+    }
+
+    public Instant getActualizadoEn() {
+        return actualizadoEn;
+    }
+
+    public boolean isInmutable() {
+        return inmutable;
+    }
+}
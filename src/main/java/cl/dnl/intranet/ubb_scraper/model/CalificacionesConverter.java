@@ -0,0 +1,40 @@
+package cl.dnl.intranet.ubb_scraper.model;
+
+import cl.dnl.intranet.ubb_scraper.dto.CalificacionDto;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+import java.util.List;
+
+// Guarda la lista de calificaciones de una asignatura como JSON en una sola columna de texto.
+// Siempre se leen y escriben junto con su asignatura, así que no necesitan una tabla propia.
+@Converter
+public class CalificacionesConverter implements AttributeConverter<List<CalificacionDto>, String> {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final TypeReference<List<CalificacionDto>> TIPO = new TypeReference<>() {};
+
+    @Override
+    public String convertToDatabaseColumn(List<CalificacionDto> calificaciones) {
+        try {
+            return MAPPER.writeValueAsString(calificaciones == null ? List.of() : calificaciones);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("No se pudieron serializar las calificaciones", e);
+        }
+    }
+
+    @Override
+    public List<CalificacionDto> convertToEntityAttribute(String json) {
+        if (json == null || json.isEmpty()) {
+            return List.of();
+        }
+        try {
+            return MAPPER.readValue(json, TIPO);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("No se pudieron leer las calificaciones", e);
+        }
+    }
+}
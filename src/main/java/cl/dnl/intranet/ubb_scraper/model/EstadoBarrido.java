@@ -0,0 +1,45 @@
+package cl.dnl.intranet.ubb_scraper.model;
+
+import jakarta.persistence.*;
+
+@Entity
+@Table(name = "estado_barrido")
+// Avance de un recorrido periódico sobre los usuarios (por ahora, solo el barrido de notas), para
+// que después de un reinicio o un despliegue continúe desde donde iba en vez de empezar de nuevo.
+public class EstadoBarrido {
+
+    @Id
+    private String barrido;
+
+    @Column(nullable = false) // Último ID de usuario procesado; 0 al empezar una vuelta.
+    private long ultimoId;
+
+    // --- Constructores ---
+
+    // Constructor vacío requerido por JPA.
+    public EstadoBarrido() {
+    }
+
+    public EstadoBarrido(String barrido, long ultimoId) {
+        this.barrido = barrido;
+        this.ultimoId = ultimoId;
+    }
+
+    // --- Getters y Setters ---
+
+    public String getBarrido() {
+        return barrido;
+    }
+
+    public void setBarrido(String barrido) {
+        this.barrido = barrido;
+    }
+
+    public long getUltimoId() {
+        return ultimoId;
+    }
+
+    public void setUltimoId(long ultimoId) {
+        this.ultimoId = ultimoId;
+    }
+}
@@ -19,6 +19,11 @@ public class Usuario {
     @Column(length = 1024, nullable = false) // Columna para la contraseña, no nula y con longitud suficiente.
     private String passwordEncriptada;
 
+    // HMAC de la contraseña. Como la encriptación AES-GCM usa un IV aleatorio, comparar textos
+    // encriptados no sirve para saber si la contraseña cambió; esta huella sí es determinista.
+    @Column(length = 64) // Puede ser nula en registros creados antes de esta columna.
+    private String passwordHuella;
+
     // --- Constructores ---
 
     // Constructor vacío requerido por JPA.
@@ -26,10 +31,11 @@ public class Usuario {
     }
 
     // Constructor útil para crear nuevos usuarios.
-    public Usuario(String rut, String nombre, String passwordEncriptada) {
+    public Usuario(String rut, String nombre, String passwordEncriptada, String passwordHuella) {
         this.rut = rut;
         this.nombre = nombre;
         this.passwordEncriptada = passwordEncriptada;
+        this.passwordHuella = passwordHuella;
     }
 
     // --- Getters y Setters ---
@@ -66,4 +72,12 @@ public class Usuario {
     public void setPasswordEncriptada(String passwordEncriptada) {
         this.passwordEncriptada = passwordEncriptada;
     }
+
+    public String getPasswordHuella() {
+        return passwordHuella;
+    }
+
+    public void setPasswordHuella(String passwordHuella) {
+        this.passwordHuella = passwordHuella;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,287 @@
+package cl.dnl.intranet.ubb_scraper.parser;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.QueryParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Motor de parseo de las páginas de notas de la intranet (ramos normales y modulares).
+ *
+ * Los selectores CSS y las expresiones regulares se compilan una sola vez al cargar la clase, las
+ * filas de cada tabla se recorren una sola vez y el resultado es inmutable. Es seguro para uso
+ * concurrente: no guarda estado entre llamadas.
+ */
+public final class NotasParser {
+
+    // Las trazas del cálculo van en DEBUG y se arman solo si están habilitadas (por ejemplo, para el
+    // RUT de app.log.traza-rut).
+    private static final Logger log = LoggerFactory.getLogger(NotasParser.class);
+
+    // --- Selectores precompilados ---
+    private static final Evaluator FILAS_PONDERACION = QueryParser.parse("h3:contains(Ponderaciones) ~ div table tbody tr");
+    private static final Evaluator CELDAS_NOTAS = QueryParser.parse("h3:contains(Calificaciones) ~ div table tbody tr.Tabla3 td");
+    private static final Evaluator ICONO_EVALUACION = QueryParser.parse("i.fa-book");
+    private static final Evaluator ICONO_SUBEVALUACION = QueryParser.parse("i.fa-chevron-right");
+    private static final Evaluator TITULOS_MODULO = QueryParser.parse("h3:contains(Calificaciones MÓDULO)");
+    private static final Evaluator FILAS_TABLA = QueryParser.parse("tbody tr");
+
+    // Separador de los parámetros del atributo onClick: "f(a, b, c)"
+    private static final Pattern SEPARADOR_PARAMETROS = Pattern.compile(",\\s*");
+
+    private NotasParser() {
+    }
+
+    /**
+     * Parsea la página de notas de un ramo normal (remote_ver_calif_greybox.php).
+     * El promedio es la suma de nota * factor de cada evaluación con nota, dividida por 100.
+     */
+    public static ResultadoNotas parseNormal(Document notasDoc) {
+        return aplicarPlan(planPonderacion(notasDoc, null), notasDoc);
+    }
+
+    /**
+     * Arma el plan de ponderaciones de la página de un ramo normal. Si la tabla tiene la misma huella
+     * que la del plan anterior, se devuelve ese mismo plan sin volver a armarlo.
+     * La huella se calcula siempre, en la misma pasada que lee la tabla, así que un cambio de
+     * factores se detecta aunque las evaluaciones y las celdas de notas sigan siendo las mismas.
+     * @param anterior Plan ya conocido para la sección (puede ser null).
+     */
+    public static PlanPonderacion planPonderacion(Document notasDoc, PlanPonderacion anterior) {
+        // Una pasada por la tabla de ponderaciones: se guarda el tipo de fila, el nombre y el factor
+        // (lo único que usa el plan) y con eso se calcula la huella FNV-1a de 64 bits.
+        StringBuilder tipos = new StringBuilder();
+        List<String> textos = new ArrayList<>();
+        long huella = 0xcbf29ce484222325L;
+        for (Element row : notasDoc.select(FILAS_PONDERACION)) {
+            char tipo;
+            if (row.selectFirst(ICONO_EVALUACION) != null) {
+                tipo = 'E';
+            } else if (row.selectFirst(ICONO_SUBEVALUACION) != null) {
+                tipo = 'S';
+            } else {
+                continue;
+            }
+            Elements cells = row.getElementsByTag("td");
+            String nombre = cells.get(0).text();
+            String factor = cells.get(2).text();
+            tipos.append(tipo);
+            textos.add(nombre);
+            textos.add(factor);
+            huella = fnv(huella, tipo);
+            huella = fnv(huella, nombre);
+            huella = fnv(huella, factor);
+        }
+        if (anterior != null && anterior.huella() == huella) {
+            return anterior;
+        }
+
+        // Se arma a partir de lo ya leído, en listas temporales que se congelan al final.
+        List<String> nombres = new ArrayList<>();
+        List<Integer> factores = new ArrayList<>();
+        List<List<PlanPonderacion.SubEvaluacionPlan>> subs = new ArrayList<>();
+        for (int i = 0; i < tipos.length(); i++) {
+            String nombre = textos.get(2 * i).trim();
+            int factor = Integer.parseInt(textos.get(2 * i + 1).trim());
+            if (tipos.charAt(i) == 'E') {
+                nombres.add(nombre);
+                factores.add(factor);
+                subs.add(new ArrayList<>());
+            } else if (!nombres.isEmpty()) {
+                subs.get(nombres.size() - 1).add(new PlanPonderacion.SubEvaluacionPlan(nombre, factor));
+            }
+        }
+        List<PlanPonderacion.EvaluacionPlan> evaluaciones = new ArrayList<>(nombres.size());
+        for (int e = 0; e < nombres.size(); e++) {
+            evaluaciones.add(new PlanPonderacion.EvaluacionPlan(nombres.get(e), factores.get(e), List.copyOf(subs.get(e))));
+        }
+        return new PlanPonderacion(huella, List.copyOf(evaluaciones));
+    }
+
+    /**
+     * Aplica un plan de ponderaciones a las notas de la página de un ramo normal y calcula el promedio.
+     * Las notas vienen en orden, una celda por evaluación sin sub-evaluaciones y una por cada
+     * sub-evaluación.
+     */
+    public static ResultadoNotas aplicarPlan(PlanPonderacion plan, Document notasDoc) {
+        Elements notasCells = notasDoc.select(CELDAS_NOTAS);
+        int notaIndex = 0;
+        List<ResultadoNotas.Evaluacion> evaluaciones = new ArrayList<>(plan.evaluaciones().size());
+        for (PlanPonderacion.EvaluacionPlan evalPlan : plan.evaluaciones()) {
+            double notaFinal = 0.0;
+            List<ResultadoNotas.SubEvaluacion> subs = List.of();
+
+            if (evalPlan.subEvaluaciones().isEmpty()) {
+                if (notaIndex < notasCells.size()) {
+                    notaFinal = Math.max(0.0, parseNota(notasCells.get(notaIndex).text()));
+                    notaIndex++;
+                }
+            } else {
+                List<ResultadoNotas.SubEvaluacion> subsTemp = new ArrayList<>(evalPlan.subEvaluaciones().size());
+                double sumaPonderada = 0;
+                double sumaFactores = 0;
+                for (PlanPonderacion.SubEvaluacionPlan subPlan : evalPlan.subEvaluaciones()) {
+                    int factorSub = subPlan.factor();
+                    double nota = -1.0; // -1 indica que no tiene nota aún
+                    if (notaIndex < notasCells.size()) {
+                        nota = parseNota(notasCells.get(notaIndex).text());
+                        notaIndex++;
+                    }
+                    if (nota > 0) { // Solo considerar notas válidas
+                        sumaPonderada += nota * factorSub;
+                        sumaFactores += factorSub;
+                    }
+                    subsTemp.add(new ResultadoNotas.SubEvaluacion(subPlan.nombre(), factorSub, nota));
+                }
+                if (sumaFactores > 0) {
+                    notaFinal = sumaPonderada / sumaFactores;
+                }
+                subs = List.copyOf(subsTemp);
+            }
+            evaluaciones.add(new ResultadoNotas.Evaluacion(evalPlan.nombre(), evalPlan.factor(), notaFinal, subs));
+        }
+
+        // Nota final ponderada
+        double sumaDeAportes = 0;
+        boolean traza = log.isDebugEnabled();
+
+        for (ResultadoNotas.Evaluacion eval : evaluaciones) {
+            if (eval.factor() > 0 && eval.nota() > 0) {
+                // El "aporte" de cada evaluación es su nota por su ponderación (factor)
+                double aporte = eval.nota() * eval.factor();
+                sumaDeAportes += aporte;
+                if (traza) {
+                    log.debug("Aporte de '{}': nota {} * factor {} = {}", eval.nombre(), eval.nota(), eval.factor(), aporte);
+                }
+            }
+        }
+
+        // El promedio final es la suma de los aportes, dividido por 100.
+        double promedioFinal = sumaDeAportes / 100.0;
+
+        if (traza) {
+            log.debug("Nota final proyectada: {} / 100 = {}", sumaDeAportes, promedioFinal);
+        }
+
+        return new ResultadoNotas(promedioFinal, List.copyOf(evaluaciones));
+    }
+
+    /**
+     * Parsea la página de notas de un ramo modular (detalle_calificacion_modular.php).
+     * Solo cuenta el último módulo con evaluaciones; su promedio se calcula sobre los factores
+     * de las evaluaciones que ya tienen nota.
+     */
+    public static ResultadoNotas parseModular(Document notasDoc) {
+        // 1. Encontrar el último módulo activo
+        Elements modulos = notasDoc.select(TITULOS_MODULO);
+        Element ultimoModuloActivo = null;
+        Elements filasModulo = null;
+        for (int i = modulos.size() - 1; i >= 0; i--) {
+            Element tablaContainer = modulos.get(i).nextElementSibling();
+            if (tablaContainer != null) {
+                Elements filas = tablaContainer.select(FILAS_TABLA);
+                if (!filas.isEmpty()) {
+                    ultimoModuloActivo = tablaContainer;
+                    filasModulo = filas;
+                    break;
+                }
+            }
+        }
+
+        if (ultimoModuloActivo == null) return ResultadoNotas.VACIO;
+
+        boolean traza = log.isDebugEnabled();
+        if (traza) {
+            log.debug("Ramo modular, calculando para el módulo: {}", ultimoModuloActivo.previousElementSibling().text());
+        }
+
+        // 2. Evaluaciones y cálculo en la misma pasada: en los modulares toda la info está en una sola tabla.
+        List<ResultadoNotas.Evaluacion> evaluaciones = new ArrayList<>();
+        double sumaDeAportes = 0;
+        double sumaDeFactoresUsados = 0;
+
+        for (Element row : filasModulo) {
+            Elements cells = row.getElementsByTag("td");
+            if (cells.size() != 4) continue; // Solo las filas de evaluaciones principales
+
+            String nombre = cells.get(0).text().trim();
+            int factor;
+            double nota;
+            try {
+                factor = Integer.parseInt(cells.get(2).text().trim());
+                nota = Double.parseDouble(cells.get(3).text().trim().replace(',', '.'));
+            } catch (NumberFormatException e) {
+                continue; // Ignorar filas de pie de tabla
+            }
+            evaluaciones.add(new ResultadoNotas.Evaluacion(nombre, factor, nota, List.of()));
+
+            if (factor > 0 && nota > 0) {
+                double aporte = nota * factor;
+                sumaDeAportes += aporte;
+                sumaDeFactoresUsados += factor;
+                if (traza) {
+                    log.debug("Aporte de '{}': nota {} * factor {} = {}", nombre, nota, factor, aporte);
+                }
+            }
+        }
+
+        // El promedio de un módulo SÍ se calcula sobre los factores cursados en ESE módulo.
+        double promedioFinal = (sumaDeFactoresUsados > 0) ? (sumaDeAportes / sumaDeFactoresUsados) : 0.0;
+
+        if (traza) {
+            log.debug("Nota final modular: {} / {} = {}", sumaDeAportes, sumaDeFactoresUsados, promedioFinal);
+        }
+
+        return new ResultadoNotas(promedioFinal, List.copyOf(evaluaciones));
+    }
+
+    /**
+     * Extrae los parámetros de un atributo onClick como "abrir_CalifShow(1, 'X123', 2025, 1, 2, 'Nombre')".
+     */
+    public static String[] parametrosOnClick(String onClickAttr) {
+        String paramsString = onClickAttr.substring(onClickAttr.indexOf('(') + 1, onClickAttr.lastIndexOf(')'));
+        return SEPARADOR_PARAMETROS.split(paramsString);
+    }
+
+    /**
+     * Deja solo los dígitos de un texto (ej. "'AB1234'" -> "1234"), sin usar expresiones regulares.
+     */
+    public static String soloDigitos(String texto) {
+        StringBuilder digitos = new StringBuilder(texto.length());
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (c >= '0' && c <= '9') digitos.append(c);
+        }
+        return digitos.toString();
+    }
+
+    private static long fnv(long huella, char c) {
+        return (huella ^ c) * 0x100000001b3L;
+    }
+
+    // Cada texto termina con un separador, para que "ab"+"c" no coincida con "a"+"bc".
+    private static long fnv(long huella, String texto) {
+        for (int i = 0; i < texto.length(); i++) {
+            huella = fnv(huella, texto.charAt(i));
+        }
+        return fnv(huella, '\u0001');
+    }
+
+    // Convierte "5,5" en 5.5. Devuelve -1 si la celda está vacía o no es un número.
+    private static double parseNota(String texto) {
+        String limpio = texto.trim();
+        if (limpio.isEmpty()) return -1.0;
+        try {
+            return Double.parseDouble(limpio.replace(',', '.'));
+        } catch (NumberFormatException e) {
+            return -1.0;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package cl.dnl.intranet.ubb_scraper.parser;
+
+import cl.dnl.intranet.ubb_scraper.dto.CarreraDto;
+import cl.dnl.intranet.ubb_scraper.dto.DatosAlumnoDto;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.StreamParser;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.QueryParser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Extracción en streaming de las páginas grandes de la intranet de las que solo se usan unos
+ * pocos campos (la página inicial de asignaturas, la de una carrera y la del periodo).
+ *
+ * En vez de armar el DOM completo, jsoup entrega cada elemento apenas se cierra su etiqueta y la
+ * lectura se detiene en cuanto aparecen todos los campos buscados; el resto de la respuesta no se
+ * parsea. La página de una carrera se lee entera, porque 'det' se cuenta sobre todas sus tablas de
+ * asignaturas. Igual que NotasParser, no guarda estado entre llamadas.
+ */
+public final class PaginaStreamParser {
+
+    // --- Selectores precompilados ---
+    private static final Evaluator PERIODO_ACADEMICO = QueryParser.parse("input#periodo_acad");
+    private static final Evaluator ETIQUETA_NOMBRES = QueryParser.parse("label.blue:contains(Nombres)");
+    private static final Evaluator ETIQUETA_APELLIDOS = QueryParser.parse("label.blue:contains(Apellidos)");
+    private static final Evaluator SELECTOR_CARRERA = QueryParser.parse("select[name=cambio_carrera]");
+    private static final Evaluator OPCION_SELECCIONADA = QueryParser.parse("option[selected]");
+    private static final Evaluator TABLA_ASIGNATURAS = QueryParser.parse("table.table.table-hover");
+    private static final Evaluator FILAS_TABLA = QueryParser.parse("tbody tr");
+    private static final Evaluator PRIMERA_CELDA = QueryParser.parse("td:first-child");
+    private static final Evaluator BOTON_CALIFICACIONES = QueryParser.parse("span[title='Ver Calificaciones']");
+
+    // Campos ocultos de la página de la carrera que se reenvían al pedir las notas de ramos modulares.
+    private static final List<String> CAMPOS_FORMULARIO =
+            List.of("alu_rut", "crr_codigo", "pca_codigo", "alc_ano_ingreso", "alc_periodo");
+
+    /**
+     * Fila de la tabla de asignaturas de una carrera.
+     * @param onClick atributo onClick del botón de calificaciones, o null si la fila no lo tiene.
+     * @param det     posición de la fila contando las filas de todas las tablas de asignaturas, que
+     *                es el valor de 'det' que espera la intranet.
+     */
+    public record FilaAsignatura(String nombre, String onClick, int det) {
+    }
+
+    /** Lo que se usa de la página de una carrera: sus asignaturas y los campos ocultos del formulario. */
+    public record PaginaCarrera(List<FilaAsignatura> filas, Map<String, String> datosFormulario) {
+    }
+
+    private PaginaStreamParser() {
+    }
+
+    /**
+     * Lee el valor de input#periodo_acad y deja de leer en cuanto lo encuentra.
+     * @return El periodo, o "" si la página no lo trae.
+     */
+    public static String periodoActual(Reader html, String baseUri) throws IOException {
+        try (StreamParser parser = new StreamParser(Parser.htmlParser()).parse(html, baseUri)) {
+            Element input = parser.selectFirst(PERIODO_ACADEMICO);
+            return input != null ? input.attr("value") : "";
+        }
+    }
+
+    /**
+     * Extrae de la página inicial de asignaturas (ver_calif_show.php) los datos del alumno y sus
+     * carreras, deteniéndose cuando ya se leyeron los nombres, apellidos, campos ocultos y el
+     * selector de carreras completo.
+     */
+    public static DatosAlumnoDto datosAlumno(Reader html, String baseUri) throws IOException {
+        String nombres = null;
+        String apellidos = null;
+        String aluRut = null;
+        String anio = null;
+        Element selector = null;
+
+        try (StreamParser parser = new StreamParser(Parser.htmlParser()).parse(html, baseUri)) {
+            Iterator<Element> elementos = parser.iterator();
+            while (elementos.hasNext()
+                    && (nombres == null || apellidos == null || aluRut == null || anio == null || selector == null)) {
+                Element el = elementos.next();
+                switch (el.normalName()) {
+                    case "label" -> {
+                        // El valor es la etiqueta que sigue a la que dice "Nombres" o "Apellidos";
+                        // cuando se cierra, la anterior ya está completa.
+                        Element anterior = el.previousElementSibling();
+                        if (anterior == null) break;
+                        if (nombres == null && anterior.is(ETIQUETA_NOMBRES)) {
+                            nombres = el.text().trim();
+                        } else if (apellidos == null && anterior.is(ETIQUETA_APELLIDOS)) {
+                            apellidos = el.text().trim();
+                        }
+                    }
+                    case "input" -> {
+                        if (aluRut == null && "alu_rut".equals(el.attr("name"))) {
+                            aluRut = el.val();
+                        } else if (anio == null && "anio".equals(el.attr("name"))) {
+                            anio = el.val();
+                        }
+                    }
+                    case "select" -> {
+                        if (selector == null && el.is(SELECTOR_CARRERA)) {
+                            selector = el;
+                        }
+                    }
+                    default -> {
+                    }
+                }
+            }
+        }
+
+        List<CarreraDto> carreras = selector != null ? parseCarreras(selector) : List.of();
+        Element seleccionada = selector != null ? selector.selectFirst(OPCION_SELECCIONADA) : null;
+        String carreraActiva = seleccionada != null ? seleccionada.val()
+                : (carreras.isEmpty() ? null : carreras.get(0).valorCompleto());
+
+        return new DatosAlumnoDto(
+                aluRut != null ? aluRut : "",
+                anio != null ? anio : "",
+                nombres != null ? nombres : "",
+                apellidos != null ? apellidos : "",
+                carreras,
+                carreraActiva
+        );
+    }
+
+    /**
+     * Extrae de la página de una carrera las tablas de asignaturas y los campos ocultos del
+     * formulario. Se lee hasta el final: las filas se numeran a lo largo de todas las tablas.
+     */
+    public static PaginaCarrera paginaCarrera(Reader html, String baseUri) throws IOException {
+        Map<String, String> datosFormulario = new HashMap<>();
+        List<Element> tablas = new ArrayList<>();
+
+        try (StreamParser parser = new StreamParser(Parser.htmlParser()).parse(html, baseUri)) {
+            Iterator<Element> elementos = parser.iterator();
+            while (elementos.hasNext()) {
+                Element el = elementos.next();
+                if ("input".equals(el.normalName())) {
+                    String nombre = el.attr("name");
+                    if (CAMPOS_FORMULARIO.contains(nombre)) {
+                        datosFormulario.putIfAbsent(nombre, el.val());
+                    }
+                } else if (el.is(TABLA_ASIGNATURAS)) {
+                    tablas.add(el);
+                }
+            }
+        }
+        for (String campo : CAMPOS_FORMULARIO) {
+            datosFormulario.putIfAbsent(campo, "");
+        }
+
+        // Igual que doc.select("table.table.table-hover tbody tr"): filas de todas las tablas, en
+        // el orden del documento y sin repetir.
+        List<FilaAsignatura> filas = new ArrayList<>();
+        Set<Element> unicas = new LinkedHashSet<>();
+        for (Element tabla : tablas) {
+            unicas.addAll(tabla.select(FILAS_TABLA));
+        }
+        List<Element> rows = new ArrayList<>(unicas);
+        for (int i = 0; i < rows.size(); i++) {
+            Element row = rows.get(i);
+            Element celda = row.selectFirst(PRIMERA_CELDA);
+            String nombre = celda != null ? celda.text() : "";
+            if (nombre.isEmpty()) continue;
+
+            Element boton = row.selectFirst(BOTON_CALIFICACIONES);
+            filas.add(new FilaAsignatura(nombre, boton == null ? null : boton.attr("onClick"), i));
+        }
+        return new PaginaCarrera(List.copyOf(filas), Map.copyOf(datosFormulario));
+    }
+
+    // Cada opción del selector trae la carrera en la forma "crr_codigo-pca_codigo-alc_ano_ingreso-alc_periodo".
+    private static List<CarreraDto> parseCarreras(Element selector) {
+        List<CarreraDto> carreras = new ArrayList<>();
+        for (Element option : selector.getElementsByTag("option")) {
+            String valorCompleto = option.val();
+            String[] partes = valorCompleto.split("-");
+            carreras.add(new CarreraDto(option.text(), valorCompleto, partes[0], partes[1], partes[2], partes[3]));
+        }
+        return List.copyOf(carreras);
+    }
+}
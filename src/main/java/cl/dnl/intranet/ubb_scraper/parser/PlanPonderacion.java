@@ -0,0 +1,17 @@
+package cl.dnl.intranet.ubb_scraper.parser;
+
+import java.util.List;
+
+/**
+ * Estructura inmutable de la tabla "Ponderaciones" de un ramo normal: evaluaciones,
+ * sub-evaluaciones y factores. Es la misma para todos los alumnos de una sección, así que se puede
+ * compartir entre ellos; a cada alumno solo se le aplican sus notas (NotasParser#aplicarPlan).
+ * @param huella       Huella del contenido de la tabla, para saber si la sección la cambió.
+ * @param evaluaciones Evaluaciones principales en el orden de la tabla.
+ */
+public record PlanPonderacion(long huella, List<EvaluacionPlan> evaluaciones) {
+
+    public record EvaluacionPlan(String nombre, int factor, List<SubEvaluacionPlan> subEvaluaciones) {}
+
+    public record SubEvaluacionPlan(String nombre, int factor) {}
+}
@@ -0,0 +1,32 @@
+package cl.dnl.intranet.ubb_scraper.parser;
+
+import cl.dnl.intranet.ubb_scraper.dto.CalificacionDto;
+
+import java.util.List;
+
+/**
+ * Resultado inmutable de parsear la página de notas de una asignatura.
+ * @param promedio     Promedio calculado (0.0 si no hay notas).
+ * @param evaluaciones Evaluaciones principales en el orden de la tabla.
+ */
+public record ResultadoNotas(double promedio, List<Evaluacion> evaluaciones) {
+
+    public static final ResultadoNotas VACIO = new ResultadoNotas(0.0, List.of());
+
+    /**
+     * Evaluación principal. Si tiene sub-evaluaciones, 'nota' es su promedio ponderado.
+     */
+    public record Evaluacion(String nombre, int factor, double nota, List<SubEvaluacion> subEvaluaciones) {}
+
+    /**
+     * Sub-evaluación. 'nota' vale -1 si todavía no tiene nota.
+     */
+    public record SubEvaluacion(String nombre, int factor, double nota) {}
+
+    // Nota final de cada evaluación principal, en el orden de la tabla
+    public List<CalificacionDto> calificaciones() {
+        return evaluaciones.stream()
+                .map(eval -> new CalificacionDto(eval.nombre(), eval.nota()))
+                .toList();
+    }
+}
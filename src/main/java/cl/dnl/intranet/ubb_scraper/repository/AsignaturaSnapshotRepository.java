@@ -0,0 +1,31 @@
+package cl.dnl.intranet.ubb_scraper.repository;
+
+import cl.dnl.intranet.ubb_scraper.model.AsignaturaSnapshot;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface AsignaturaSnapshotRepository extends JpaRepository<AsignaturaSnapshot, Long> {
+
+    /**
+     * Devuelve el snapshot de un alumno para una carrera y periodo, en el orden de la intranet.
+     */
+    List<AsignaturaSnapshot> findByRutAndCarreraAndAnoAndPeriodoOrderByOrden(String rut, String carrera, String ano, String periodo);
+
+    /**
+     * Devuelve todos los snapshots inmutables (periodos ya cerrados) de un alumno, agrupables por
+     * carrera, año y periodo y en el orden de la intranet dentro de cada uno.
+     */
+    List<AsignaturaSnapshot> findByRutAndInmutableTrueOrderByCarreraAscAnoAscPeriodoAscOrdenAsc(String rut);
+
+    /**
+     * Borra un snapshot completo con una sola sentencia DELETE (en vez de una por fila).
+     */
+    @Modifying
+    @Query("delete from AsignaturaSnapshot s where s.rut = :rut and s.carrera = :carrera and s.ano = :ano and s.periodo = :periodo")
+    void deleteSnapshot(String rut, String carrera, String ano, String periodo);
+}
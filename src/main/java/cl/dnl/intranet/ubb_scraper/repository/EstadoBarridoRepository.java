@@ -0,0 +1,9 @@
+package cl.dnl.intranet.ubb_scraper.repository;
+
+import cl.dnl.intranet.ubb_scraper.model.EstadoBarrido;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface EstadoBarridoRepository extends JpaRepository<EstadoBarrido, String> {
+}
@@ -1,9 +1,11 @@
 package cl.dnl.intranet.ubb_scraper.repository;
 
 import cl.dnl.intranet.ubb_scraper.model.Usuario;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository // Le dice a Spring que esta es una interfaz para acceder a datos.
@@ -19,4 +21,13 @@ public interface UsuarioRepository extends JpaRepository<Usuario, Long> {
      */
     Optional<Usuario> findByRut(String rut);
 
+    /**
+     * Devuelve el siguiente lote de usuarios con ID mayor al indicado, ordenados por ID.
+     * Permite recorrer la tabla por partes y retomar desde el último ID procesado.
+     *
+     * @param id El último ID ya procesado (0 para empezar desde el principio).
+     * @param pageable Tamaño del lote.
+     */
+    List<Usuario> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
 }
\ No newline at end of file
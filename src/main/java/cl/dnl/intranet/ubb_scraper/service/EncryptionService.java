@@ -4,13 +4,19 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.crypto.encrypt.AesBytesEncryptor;
 import org.springframework.stereotype.Service;
 
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
 import java.util.Base64;
 
 @Service
 public class EncryptionService {
 
     private final AesBytesEncryptor encryptor;
+    // Clave para la huella HMAC, derivada de la misma clave y salt de la encriptación.
+    private final SecretKeySpec claveHuella;
 
     // El constructor inyecta el valor de 'app.encryption.key' desde application.properties.
     public EncryptionService(@Value("${app.encryption.key}") String secretKey,
@@ -18,6 +24,7 @@ public class EncryptionService {
         // Usamos el algoritmo AES/GCM, que es el estándar recomendado para encriptación.
         // Requiere una clave secreta y un "salt" (un valor aleatorio para añadir más seguridad).
         this.encryptor = new AesBytesEncryptor(secretKey, salt, AesBytesEncryptor.CipherAlgorithm.GCM.defaultIvGenerator());
+        this.claveHuella = derivarClaveHuella(secretKey, salt);
     }
 
     /**
@@ -40,4 +47,47 @@ public class EncryptionService {
         byte[] decryptedBytes = encryptor.decrypt(encryptedBytes);
         return new String(decryptedBytes, StandardCharsets.UTF_8);
     }
-}
\ No newline at end of file
+
+    /**
+     * Calcula una huella determinista (HMAC-SHA256) de un texto.
+     * A diferencia de encrypt(), que usa un IV aleatorio y produce un resultado distinto cada vez,
+     * la huella de un mismo texto es siempre la misma, así que sirve para saber si una contraseña
+     * cambió sin tener que desencriptar nada.
+     * @param plainText El texto (ej. la contraseña).
+     * @return La huella en Base64.
+     */
+    public String huella(String plainText) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(claveHuella);
+            return Base64.getEncoder().encodeToString(mac.doFinal(plainText.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("No se pudo calcular la huella", e);
+        }
+    }
+
+    /**
+     * Compara en tiempo constante la huella de un texto con una huella guardada.
+     * @return false si la huella guardada es null (registros anteriores a la columna).
+     */
+    public boolean coincideHuella(String plainText, String huellaGuardada) {
+        if (huellaGuardada == null) {
+            return false;
+        }
+        return MessageDigest.isEqual(
+                huella(plainText).getBytes(StandardCharsets.US_ASCII),
+                huellaGuardada.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static SecretKeySpec derivarClaveHuella(String secretKey, String salt) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            sha.update("huella:".getBytes(StandardCharsets.UTF_8));
+            sha.update(secretKey.getBytes(StandardCharsets.UTF_8));
+            sha.update(salt.getBytes(StandardCharsets.UTF_8));
+            return new SecretKeySpec(sha.digest(), "HmacSHA256");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("No se pudo derivar la clave de la huella", e);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package cl.dnl.intranet.ubb_scraper.service;
+
+import cl.dnl.intranet.ubb_scraper.dto.CarreraDto;
+import cl.dnl.intranet.ubb_scraper.model.EstadoBarrido;
+import cl.dnl.intranet.ubb_scraper.model.Usuario;
+import cl.dnl.intranet.ubb_scraper.repository.EstadoBarridoRepository;
+import cl.dnl.intranet.ubb_scraper.repository.UsuarioRepository;
+import cl.dnl.intranet.ubb_scraper.config.RutMdcInterceptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recorre periódicamente los usuarios guardados para detectar notas nuevas sin que el alumno tenga
+ * que abrir el dashboard. Por cada usuario inicia sesión con su clave guardada, vuelve a consultar
+ * las asignaturas de su carrera por defecto y actualiza el snapshot; si algo cambió, el snapshot
+ * publica un CalificacionesCambiadasEvent.
+ *
+ * Para no saturar la intranet (ni esta instancia) el recorrido va por lotes, con un máximo de
+ * usuarios a la vez, una tasa máxima de usuarios por segundo y un retraso aleatorio antes de cada
+ * uno. Cada lote continúa desde el último ID procesado, que se guarda en la BD (estado_barrido):
+ * un recorrido de miles de usuarios se reparte entre varias ejecuciones y, tras un reinicio o un
+ * despliegue, sigue desde donde iba.
+ *
+ * Está desactivado por defecto: app.barrido.habilitado=true para activarlo.
+ */
+@Component
+public class GradeChangeSweeper {
+
+    private static final Logger log = LoggerFactory.getLogger(GradeChangeSweeper.class);
+
+    // Fila de estado_barrido con el avance de este barrido.
+    private static final String BARRIDO = "calificaciones";
+
+    private final UsuarioRepository usuarioRepository;
+    private final EstadoBarridoRepository estadoBarridoRepository;
+    private final EncryptionService encryptionService;
+    private final UbbScrapingService scrapingService;
+    private final ScrapingCoordinator scrapingCoordinator;
+    private final ExecutorService scrapingExecutor;
+
+    private final boolean habilitado;
+    private final int tamanoLote;
+    private final long jitterMaxMs;
+    private final Semaphore usuariosConcurrentes;
+    private final RateLimiter rateLimiter;
+
+    // Último ID de usuario procesado. Vuelve a 0 al terminar una vuelta completa. Se lee de la BD en
+    // el primer lote; solo lo usa el hilo del @Scheduled, y los lotes nunca se solapan.
+    private Long cursor;
+
+    public GradeChangeSweeper(UsuarioRepository usuarioRepository,
+                              EstadoBarridoRepository estadoBarridoRepository,
+                              EncryptionService encryptionService,
+                              UbbScrapingService scrapingService,
+                              ScrapingCoordinator scrapingCoordinator,
+                              ExecutorService scrapingExecutor,
+                              @Value("${app.barrido.habilitado:false}") boolean habilitado,
+                              @Value("${app.barrido.lote:50}") int tamanoLote,
+                              @Value("${app.barrido.max-usuarios-concurrentes:4}") int maxUsuariosConcurrentes,
+                              @Value("${app.barrido.usuarios-por-segundo:1.0}") double usuariosPorSegundo,
+                              @Value("${app.barrido.jitter-max-ms:5000}") long jitterMaxMs) {
+        this.usuarioRepository = usuarioRepository;
+        this.estadoBarridoRepository = estadoBarridoRepository;
+        this.encryptionService = encryptionService;
+        this.scrapingService = scrapingService;
+        this.scrapingCoordinator = scrapingCoordinator;
+        this.scrapingExecutor = scrapingExecutor;
+        this.habilitado = habilitado;
+        this.tamanoLote = tamanoLote;
+        this.jitterMaxMs = jitterMaxMs;
+        this.usuariosConcurrentes = new Semaphore(maxUsuariosConcurrentes);
+        this.rateLimiter = new RateLimiter(usuariosPorSegundo);
+    }
+
+    // fixedDelay: el siguiente lote empieza recién cuando terminó el anterior, nunca se solapan.
+    @Scheduled(initialDelayString = "${app.barrido.intervalo-ms:60000}",
+               fixedDelayString = "${app.barrido.intervalo-ms:60000}")
+    public void procesarLote() {
+        if (!habilitado) {
+            return;
+        }
+
+        List<Usuario> lote = usuarioRepository.findByIdGreaterThanOrderByIdAsc(cursor(), PageRequest.of(0, tamanoLote));
+        if (lote.isEmpty()) {
+            // Terminamos una vuelta completa; la siguiente ejecución empieza desde el principio.
+            if (cursor() != 0) {
+                avanzarCursor(0);
+            }
+            return;
+        }
+
+        List<Future<?>> tareas = new ArrayList<>(lote.size());
+        for (Usuario usuario : lote) {
+            tareas.add(scrapingExecutor.submit(() -> procesarConLimites(usuario)));
+        }
+        for (Future<?> tarea : tareas) {
+            try {
+                tarea.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                // Los errores de cada usuario ya se registran dentro de la tarea.
+            }
+        }
+        avanzarCursor(lote.get(lote.size() - 1).getId());
+    }
+
+    private long cursor() {
+        if (cursor == null) {
+            cursor = estadoBarridoRepository.findById(BARRIDO).map(EstadoBarrido::getUltimoId).orElse(0L);
+        }
+        return cursor;
+    }
+
+    // Si no se puede guardar, el barrido sigue con el cursor en memoria; solo un reinicio antes del
+    // siguiente guardado lo haría repetir ese lote.
+    private void avanzarCursor(long ultimoId) {
+        cursor = ultimoId;
+        try {
+            estadoBarridoRepository.save(new EstadoBarrido(BARRIDO, ultimoId));
+        } catch (RuntimeException e) {
+            log.warn("No se pudo guardar el avance del barrido: {}", e.getMessage());
+        }
+    }
+
+    private void procesarConLimites(Usuario usuario) {
+        // Igual que en las peticiones web, los logs de la revisión llevan el RUT del alumno.
+        MDC.put(RutMdcInterceptor.CLAVE_RUT, usuario.getRut());
+        try {
+            // El retraso aleatorio evita que todos los usuarios del lote arranquen en el mismo instante.
+            TimeUnit.MILLISECONDS.sleep(ThreadLocalRandom.current().nextLong(jitterMaxMs + 1));
+            usuariosConcurrentes.acquire();
+            try {
+                rateLimiter.adquirir();
+                revisarUsuario(usuario);
+            } finally {
+                usuariosConcurrentes.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Error revisando las notas de {}: {}", usuario.getRut(), e.getMessage());
+        } finally {
+            MDC.remove(RutMdcInterceptor.CLAVE_RUT);
+        }
+    }
+
+    private void revisarUsuario(Usuario usuario) throws IOException {
+        String password = encryptionService.decrypt(usuario.getPasswordEncriptada());
+        // No se usa performLogin: registraría la sesión en el pool y desplazaría las de quienes
+        // están usando la aplicación. Si el alumno tiene una sesión abierta se reutiliza igual.
+        String sessionId = scrapingService.abrirSesionSegundoPlano(usuario.getRut(), password);
+        if (sessionId == null) {
+            // Probablemente cambió su clave en la intranet; se actualizará la próxima vez que entre.
+            return;
+        }
+
+        try {
+            List<CarreraDto> carreras = scrapingService.getAvailableCareers(sessionId);
+            if (carreras.isEmpty()) {
+                return;
+            }
+            scrapingCoordinator.refrescar(sessionId, usuario.getRut(), carreras.get(0));
+        } finally {
+            scrapingService.cerrarSesionSegundoPlano(sessionId);
+        }
+    }
+}
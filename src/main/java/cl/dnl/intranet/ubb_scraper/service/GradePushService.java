@@ -0,0 +1,136 @@
+package cl.dnl.intranet.ubb_scraper.service;
+
+import cl.dnl.intranet.ubb_scraper.dto.CambiosCalificacionesDto;
+import cl.dnl.intranet.ubb_scraper.event.CalificacionesCambiadasEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Envía por Server-Sent Events los cambios de notas detectados en el servidor a los clientes
+ * suscritos, en lugar de que cada pestaña tenga que recargar y volver a scrapear.
+ *
+ * Publicar un cambio nunca bloquea: cada suscriptor tiene una cola acotada y un hilo virtual propio
+ * que le va enviando los eventos. Si un cliente es tan lento que su cola se llena, se cierra su
+ * conexión; EventSource se reconecta solo y, al reconectarse, el frontend vuelve a
+ * pedir las notas de la carrera que muestra, por si se perdió algún cambio mientras tanto.
+ */
+@Service
+public class GradePushService {
+
+    // Marcador interno para los latidos: se envía como comentario SSE para mantener viva la conexión.
+    private static final Object LATIDO = new Object();
+
+    private final class Suscriptor {
+        final String rut;
+        final SseEmitter emitter;
+        final BlockingQueue<Object> cola;
+        volatile boolean activo = true;
+
+        Suscriptor(String rut, SseEmitter emitter) {
+            this.rut = rut;
+            this.emitter = emitter;
+            this.cola = new ArrayBlockingQueue<>(capacidadCola);
+        }
+
+        void enviarPendientes() {
+            try {
+                while (activo) {
+                    Object mensaje = cola.take();
+                    if (mensaje == LATIDO) {
+                        emitter.send(SseEmitter.event().comment("latido"));
+                    } else {
+                        emitter.send(SseEmitter.event().name("cambios").data(mensaje));
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException | IllegalStateException e) {
+                // El cliente se desconectó.
+            } finally {
+                cerrar(this);
+            }
+        }
+    }
+
+    private final ConcurrentMap<String, Set<Suscriptor>> suscriptores = new ConcurrentHashMap<>();
+    private final ExecutorService scrapingExecutor;
+    private final int capacidadCola;
+    private final long timeoutMs;
+
+    public GradePushService(ExecutorService scrapingExecutor,
+                            @Value("${app.push.capacidad-cola:16}") int capacidadCola,
+                            @Value("${app.push.timeout-ms:1800000}") long timeoutMs) {
+        this.scrapingExecutor = scrapingExecutor;
+        this.capacidadCola = capacidadCola;
+        this.timeoutMs = timeoutMs;
+    }
+
+    public SseEmitter suscribir(String rut) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Suscriptor suscriptor = new Suscriptor(rut, emitter);
+        emitter.onCompletion(() -> cerrar(suscriptor));
+        emitter.onTimeout(() -> cerrar(suscriptor));
+        emitter.onError(e -> cerrar(suscriptor));
+
+        suscriptores.computeIfAbsent(rut, r -> ConcurrentHashMap.newKeySet()).add(suscriptor);
+        scrapingExecutor.execute(suscriptor::enviarPendientes);
+        return emitter;
+    }
+
+    // Solo tras el commit: si el guardado se revierte, los clientes no deben ver cambios que no quedaron.
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void alCambiarCalificaciones(CalificacionesCambiadasEvent evento) {
+        Set<Suscriptor> destinatarios = suscriptores.get(evento.rut());
+        if (destinatarios == null) {
+            return;
+        }
+        CambiosCalificacionesDto cambios = new CambiosCalificacionesDto(
+                evento.carrera(), evento.ano(), evento.periodo(), evento.cambios());
+        for (Suscriptor suscriptor : destinatarios) {
+            if (!suscriptor.cola.offer(cambios)) {
+                // Cliente demasiado lento: lo desconectamos en vez de acumular eventos sin límite.
+                suscriptor.emitter.complete();
+                cerrar(suscriptor);
+            }
+        }
+    }
+
+    // Los proxies suelen cortar conexiones sin tráfico; un comentario periódico lo evita y además
+    // permite detectar clientes que ya se fueron. Solo se encola si no hay nada pendiente.
+    @Scheduled(fixedDelayString = "${app.push.latido-ms:20000}")
+    public void enviarLatidos() {
+        for (Set<Suscriptor> grupo : suscriptores.values()) {
+            for (Suscriptor suscriptor : grupo) {
+                if (suscriptor.cola.isEmpty()) {
+                    suscriptor.cola.offer(LATIDO);
+                }
+            }
+        }
+    }
+
+    private void cerrar(Suscriptor suscriptor) {
+        if (!suscriptor.activo) {
+            return;
+        }
+        suscriptor.activo = false;
+        // Despierta al hilo que envía para que termine.
+        suscriptor.cola.clear();
+        suscriptor.cola.offer(LATIDO);
+        suscriptores.computeIfPresent(suscriptor.rut, (rut, grupo) -> {
+            grupo.remove(suscriptor);
+            return grupo.isEmpty() ? null : grupo;
+        });
+    }
+}
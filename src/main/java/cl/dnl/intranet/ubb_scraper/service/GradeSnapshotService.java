@@ -0,0 +1,164 @@
+package cl.dnl.intranet.ubb_scraper.service;
+
+import cl.dnl.intranet.ubb_scraper.dto.AsignaturaDto;
+import cl.dnl.intranet.ubb_scraper.event.CalificacionesCambiadasEvent;
+import cl.dnl.intranet.ubb_scraper.model.AsignaturaSnapshot;
+import cl.dnl.intranet.ubb_scraper.repository.AsignaturaSnapshotRepository;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Guarda y lee la última versión conocida de las notas de cada alumno, por carrera y periodo.
+@Service
+public class GradeSnapshotService {
+
+    /**
+     * Snapshot leído de la BD.
+     * @param actualizadoEn Momento en que se obtuvieron estas notas desde la intranet.
+     */
+    public record Snapshot(List<AsignaturaDto> asignaturas, Instant actualizadoEn) {}
+
+    // Carrera (valorCompleto), año y periodo de un snapshot.
+    public record PeriodoGuardado(String carrera, String ano, String periodo) {}
+
+    // Los guardados de un mismo (rut, carrera, ano, periodo) se hacen de a uno: el DELETE y los
+    // INSERT de uno terminan (y se confirman) antes de que empiece el siguiente. Los candados se
+    // reparten por hash de la clave, así que su número no crece con los alumnos.
+    private static final int CANDADOS = 64;
+
+    // Un periodo cerrado sin asignaturas se guarda como una sola fila marcadora con esta posición,
+    // para no volver a consultarlo cada vez. Nunca se devuelve como asignatura.
+    private static final int ORDEN_SIN_ASIGNATURAS = -1;
+
+    private final AsignaturaSnapshotRepository snapshotRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transaccion;
+    private final ReentrantLock[] candados = new ReentrantLock[CANDADOS];
+
+    public GradeSnapshotService(AsignaturaSnapshotRepository snapshotRepository, ApplicationEventPublisher eventPublisher,
+                                PlatformTransactionManager transactionManager) {
+        this.snapshotRepository = snapshotRepository;
+        this.eventPublisher = eventPublisher;
+        this.transaccion = new TransactionTemplate(transactionManager);
+        for (int i = 0; i < CANDADOS; i++) {
+            candados[i] = new ReentrantLock();
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<Snapshot> obtener(String rut, String carrera, String ano, String periodo) {
+        List<AsignaturaSnapshot> filas = snapshotRepository.findByRutAndCarreraAndAnoAndPeriodoOrderByOrden(rut, carrera, ano, periodo);
+        if (filas.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(new Snapshot(asignaturas(filas), filas.get(0).getActualizadoEn()));
+    }
+
+    /**
+     * Snapshots inmutables (periodos ya cerrados) de un alumno, por carrera, año y periodo.
+     */
+    @Transactional(readOnly = true)
+    public Map<PeriodoGuardado, List<AsignaturaDto>> obtenerInmutables(String rut) {
+        Map<PeriodoGuardado, List<AsignaturaDto>> snapshots = new LinkedHashMap<>();
+        for (AsignaturaSnapshot f : snapshotRepository.findByRutAndInmutableTrueOrderByCarreraAscAnoAscPeriodoAscOrdenAsc(rut)) {
+            List<AsignaturaDto> periodo = snapshots.computeIfAbsent(
+                    new PeriodoGuardado(f.getCarrera(), f.getAno(), f.getPeriodo()), k -> new ArrayList<>());
+            if (f.getOrden() != ORDEN_SIN_ASIGNATURAS) {
+                periodo.add(new AsignaturaDto(f.getNombre(), f.getPromedio(), f.getCalificaciones()));
+            }
+        }
+        return snapshots;
+    }
+
+    // Asignaturas de las filas de un snapshot, sin la fila marcadora de periodo sin asignaturas.
+    private static List<AsignaturaDto> asignaturas(List<AsignaturaSnapshot> filas) {
+        return filas.stream()
+                .filter(f -> f.getOrden() != ORDEN_SIN_ASIGNATURAS)
+                .map(f -> new AsignaturaDto(f.getNombre(), f.getPromedio(), f.getCalificaciones()))
+                .toList();
+    }
+
+    public List<AsignaturaDto> guardar(String rut, String carrera, String ano, String periodo, List<AsignaturaDto> asignaturas) {
+        return guardar(rut, carrera, ano, periodo, asignaturas, false);
+    }
+
+    /**
+     * Reemplaza el snapshot completo: un DELETE y luego todas las filas en un solo batch de INSERT.
+     * Si ya había un snapshot y alguna asignatura cambió, publica un CalificacionesCambiadasEvent.
+     * Un snapshot inmutable no se reemplaza; si no tiene asignaturas se guarda igual, con una fila
+     * marcadora, para que el periodo no se vuelva a consultar.
+     * @param inmutable Si el periodo ya está cerrado y el snapshot no debe volver a cambiar.
+     * @return Las asignaturas tal como quedaron guardadas: las que vinieron vacías (su página falló)
+     *         con el valor anterior, o el snapshot inmutable existente si no se reemplazó.
+     */
+    public List<AsignaturaDto> guardar(String rut, String carrera, String ano, String periodo,
+                                       List<AsignaturaDto> asignaturas, boolean inmutable) {
+        // El candado se toma fuera de la transacción para soltarlo recién después del commit.
+        ReentrantLock candado = candados[Math.floorMod(Objects.hash(rut, carrera, ano, periodo), CANDADOS)];
+        candado.lock();
+        try {
+            return transaccion.execute(estado -> reemplazar(rut, carrera, ano, periodo, asignaturas, inmutable));
+        } finally {
+            candado.unlock();
+        }
+    }
+
+    private List<AsignaturaDto> reemplazar(String rut, String carrera, String ano, String periodo,
+                                           List<AsignaturaDto> asignaturas, boolean inmutable) {
+        List<AsignaturaSnapshot> existentes = snapshotRepository.findByRutAndCarreraAndAnoAndPeriodoOrderByOrden(rut, carrera, ano, periodo);
+        if (!existentes.isEmpty() && existentes.get(0).isInmutable()) {
+            return asignaturas(existentes);
+        }
+        Map<String, AsignaturaDto> previas = new HashMap<>();
+        for (AsignaturaDto previa : asignaturas(existentes)) {
+            previas.put(previa.nombre(), previa);
+        }
+
+        // Una asignatura sin promedio ni notas suele deberse a que su página falló o tardó demasiado:
+        // en ese caso conservamos lo que ya teníamos y no lo contamos como un cambio.
+        List<AsignaturaDto> finales = new ArrayList<>(asignaturas.size());
+        List<AsignaturaDto> cambios = new ArrayList<>();
+        for (AsignaturaDto nueva : asignaturas) {
+            AsignaturaDto previa = previas.get(nueva.nombre());
+            boolean vacia = nueva.promedio() == 0.0 && nueva.calificaciones().isEmpty();
+            if (vacia && previa != null) {
+                finales.add(previa);
+                continue;
+            }
+            finales.add(nueva);
+            if (!previas.isEmpty() && !vacia && !nueva.equals(previa)) {
+                cambios.add(nueva);
+            }
+        }
+
+        snapshotRepository.deleteSnapshot(rut, carrera, ano, periodo);
+
+        Instant ahora = Instant.now();
+        List<AsignaturaSnapshot> filas = new ArrayList<>(finales.size());
+        for (int i = 0; i < finales.size(); i++) {
+            AsignaturaDto a = finales.get(i);
+            filas.add(new AsignaturaSnapshot(rut, carrera, ano, periodo, i, a.nombre(), a.promedio(), a.calificaciones(), ahora, inmutable));
+        }
+        if (filas.isEmpty() && inmutable) {
+            filas.add(new AsignaturaSnapshot(rut, carrera, ano, periodo, ORDEN_SIN_ASIGNATURAS, "", 0.0, List.of(), ahora, true));
+        }
+        snapshotRepository.saveAll(filas);
+
+        if (!cambios.isEmpty()) {
+            eventPublisher.publishEvent(new CalificacionesCambiadasEvent(rut, carrera, ano, periodo, cambios));
+        }
+        return finales;
+    }
+}
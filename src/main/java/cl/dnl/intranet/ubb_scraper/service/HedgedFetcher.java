@@ -0,0 +1,307 @@
+package cl.dnl.intranet.ubb_scraper.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Peticiones a la intranet con cobertura (hedging) y reintentos, ambos acotados por el Plazo de
+ * la petición y por un presupuesto para no multiplicar la carga sobre la intranet.
+ *
+ * Cobertura: si la respuesta no llega dentro del p95 observado para ese tipo de página, se manda
+ * una copia y se usa la que llegue primero; la otra se cancela. Solo para páginas idempotentes que
+ * se leen completas (el detalle de notas), no para respuestas en streaming.
+ *
+ * Presupuesto: cada petición suma presupuesto-pct/100 de ficha y cada copia o reintento gasta una
+ * ficha entera, así que en régimen las peticiones extra no pasan de ese porcentaje.
+ *
+ * La política se configura por tipo con app.intranet.politica.&lt;tipo&gt;.* (tipos: notas-normal,
+ * notas-modular, paginas):
+ * cobertura, percentil, retraso-minimo-ms, retraso-inicial-ms, max-reintentos, espera-reintento-ms
+ * y presupuesto-pct.
+ */
+@Component
+public class HedgedFetcher {
+
+    private static final Logger log = LoggerFactory.getLogger(HedgedFetcher.class);
+
+    // Muestras de latencia guardadas por tipo y cuántas hacen falta para confiar en el percentil.
+    private static final int MUESTRAS = 256;
+    private static final int MUESTRAS_MINIMAS = 20;
+    // Fichas acumulables como máximo: permite una ráfaga corta de copias sin ahorrar indefinidamente.
+    private static final double FICHAS_MAXIMAS = 10.0;
+
+    private record Politica(boolean cobertura, double percentil, long retrasoMinimoNanos,
+                            long retrasoInicialNanos, int maxReintentos, long esperaReintentoNanos,
+                            double presupuestoPct) {
+    }
+
+    private final ExecutorService scrapingExecutor;
+    private final MeterRegistry meterRegistry;
+    private final Environment environment;
+    private final Map<String, Tipo> tipos = new ConcurrentHashMap<>();
+
+    public HedgedFetcher(ExecutorService scrapingExecutor, MeterRegistry meterRegistry, Environment environment) {
+        this.scrapingExecutor = scrapingExecutor;
+        this.meterRegistry = meterRegistry;
+        this.environment = environment;
+    }
+
+    /**
+     * Ejecuta la llamada con cobertura (si la política del tipo la habilita) y reintentos.
+     * La llamada debe ser idempotente y devolver un resultado que no haya que cerrar.
+     */
+    public <T> T conCobertura(String tipo, SingleFlight.Llamada<T> llamada) throws IOException {
+        Tipo t = tipo(tipo);
+        // Se mide cada petición por separado (no el resultado cubierto) para que el percentil
+        // refleje la latencia real de la intranet.
+        SingleFlight.Llamada<T> medida = () -> {
+            long inicio = System.nanoTime();
+            T resultado = llamada.ejecutar();
+            t.registrarLatencia(System.nanoTime() - inicio);
+            return resultado;
+        };
+        if (!t.politica.cobertura) {
+            return conReintentos(t, medida);
+        }
+        return conReintentos(t, () -> cubrir(t, medida));
+    }
+
+    /**
+     * Ejecuta la llamada con reintentos, sin copias. Sirve también para respuestas en streaming.
+     */
+    public <T> T conReintentos(String tipo, SingleFlight.Llamada<T> llamada) throws IOException {
+        Tipo t = tipo(tipo);
+        return conReintentos(t, () -> {
+            long inicio = System.nanoTime();
+            T resultado = llamada.ejecutar();
+            t.registrarLatencia(System.nanoTime() - inicio);
+            return resultado;
+        });
+    }
+
+    private <T> T conReintentos(Tipo t, SingleFlight.Llamada<T> llamada) throws IOException {
+        t.depositar();
+        for (int intento = 0; ; intento++) {
+            try {
+                return llamada.ejecutar();
+            } catch (IntranetNoDisponibleException | Plazo.PlazoAgotadoException e) {
+                // Circuito abierto, cola llena o plazo agotado: reintentar solo agrega carga.
+                throw e;
+            } catch (IOException e) {
+                if (intento >= t.politica.maxReintentos) {
+                    throw e;
+                }
+                // No vale la pena reintentar si no alcanza a terminar antes del plazo.
+                long espera = t.politica.esperaReintentoNanos << intento;
+                if (Plazo.restanteNanos() < espera + t.retrasoCobertura()) {
+                    t.reintentosSinPlazo.increment();
+                    throw e;
+                }
+                if (!t.retirar()) {
+                    t.reintentosSinPresupuesto.increment();
+                    throw e;
+                }
+                t.reintentos.increment();
+                log.debug("Reintentando {} tras error: {}", t.nombre, e.getMessage());
+                try {
+                    TimeUnit.NANOSECONDS.sleep(espera);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    // Lanza la petición y, si no responde dentro del retraso, una copia. Devuelve la primera que
+    // termina bien; si una falla, se espera a la otra.
+    private <T> T cubrir(Tipo t, SingleFlight.Llamada<T> llamada) throws IOException {
+        CompletionService<T> completadas = new ExecutorCompletionService<>(scrapingExecutor);
+        long inicio = System.nanoTime();
+        Future<T> primaria = completadas.submit(llamada::ejecutar);
+        Future<T> copia = null;
+        try {
+            long retraso = t.retrasoCobertura();
+            Future<T> lista = completadas.poll(retraso, TimeUnit.NANOSECONDS);
+            if (lista == null) {
+                // La copia solo tiene sentido si queda plazo para algo más que el retraso.
+                if (Plazo.restanteNanos() <= retraso) {
+                    t.coberturaSinPlazo.increment();
+                } else if (!t.retirar()) {
+                    t.coberturaSinPresupuesto.increment();
+                } else {
+                    copia = completadas.submit(llamada::ejecutar);
+                }
+                lista = completadas.take();
+            }
+
+            int pendientes = copia == null ? 1 : 2;
+            ExecutionException error = null;
+            while (true) {
+                try {
+                    T resultado = lista.get();
+                    if (copia == null) {
+                        t.coberturaNoUsada.increment();
+                    } else if (lista == copia) {
+                        t.coberturaGanadora.increment();
+                    } else {
+                        t.coberturaPerdedora.increment();
+                    }
+                    return resultado;
+                } catch (ExecutionException e) {
+                    error = e;
+                }
+                if (--pendientes == 0) {
+                    break;
+                }
+                lista = completadas.take();
+            }
+            throw comoIOException(error.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Se interrumpió la petición de " + t.nombre, e);
+        } finally {
+            // La que sigue en curso ya no hace falta; al cancelarla se libera su turno del guard.
+            // Si la original se cancela, lo que alcanzó a esperar cuenta como su latencia (es una
+            // cota inferior), para que las respuestas lentas no desaparezcan del percentil.
+            if (primaria.cancel(true)) {
+                t.registrarLatencia(System.nanoTime() - inicio);
+            }
+            if (copia != null) {
+                copia.cancel(true);
+            }
+        }
+    }
+
+    private static IOException comoIOException(Throwable causa) {
+        if (causa instanceof IOException io) {
+            return io;
+        }
+        if (causa instanceof RuntimeException re) {
+            throw re;
+        }
+        return new IOException(causa);
+    }
+
+    private Tipo tipo(String nombre) {
+        return tipos.computeIfAbsent(nombre, n -> new Tipo(n, leerPolitica(n)));
+    }
+
+    // Por defecto se cubren las páginas de detalle de notas, que son las que alargan la cola de
+    // getParsedAsignaturas; las demás páginas solo se reintentan una vez.
+    private Politica leerPolitica(String tipo) {
+        String prefijo = "app.intranet.politica." + tipo + ".";
+        boolean esNotas = tipo.startsWith("notas");
+        return new Politica(
+                environment.getProperty(prefijo + "cobertura", Boolean.class, esNotas),
+                environment.getProperty(prefijo + "percentil", Double.class, 0.95),
+                TimeUnit.MILLISECONDS.toNanos(environment.getProperty(prefijo + "retraso-minimo-ms", Long.class, 50L)),
+                TimeUnit.MILLISECONDS.toNanos(environment.getProperty(prefijo + "retraso-inicial-ms", Long.class, 1000L)),
+                environment.getProperty(prefijo + "max-reintentos", Integer.class, 1),
+                TimeUnit.MILLISECONDS.toNanos(environment.getProperty(prefijo + "espera-reintento-ms", Long.class, 100L)),
+                environment.getProperty(prefijo + "presupuesto-pct", Double.class, 10.0));
+    }
+
+    // Estado por tipo de página: latencias recientes, fichas del presupuesto y métricas.
+    private final class Tipo {
+        private final String nombre;
+        private final Politica politica;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final long[] latencias = new long[MUESTRAS];
+        private int siguiente;
+        private int registradas;
+        private double fichas = FICHAS_MAXIMAS;
+
+        private final Counter coberturaNoUsada;
+        private final Counter coberturaGanadora;
+        private final Counter coberturaPerdedora;
+        private final Counter coberturaSinPresupuesto;
+        private final Counter coberturaSinPlazo;
+        private final Counter reintentos;
+        private final Counter reintentosSinPresupuesto;
+        private final Counter reintentosSinPlazo;
+
+        private Tipo(String nombre, Politica politica) {
+            this.nombre = nombre;
+            this.politica = politica;
+            this.coberturaNoUsada = contador("intranet.cobertura", "no-necesaria");
+            this.coberturaGanadora = contador("intranet.cobertura", "gano-copia");
+            this.coberturaPerdedora = contador("intranet.cobertura", "gano-original");
+            this.coberturaSinPresupuesto = contador("intranet.cobertura", "sin-presupuesto");
+            this.coberturaSinPlazo = contador("intranet.cobertura", "sin-plazo");
+            this.reintentos = contador("intranet.reintentos", "reintentado");
+            this.reintentosSinPresupuesto = contador("intranet.reintentos", "sin-presupuesto");
+            this.reintentosSinPlazo = contador("intranet.reintentos", "sin-plazo");
+            Gauge.builder("intranet.cobertura.retraso", this, tipo -> tipo.retrasoCobertura() / 1e6)
+                    .description("Retraso antes de mandar la copia de una petición (ms)")
+                    .tag("tipo", nombre)
+                    .register(meterRegistry);
+        }
+
+        private Counter contador(String metrica, String resultado) {
+            return Counter.builder(metrica).tag("tipo", nombre).tag("resultado", resultado).register(meterRegistry);
+        }
+
+        private void registrarLatencia(long nanos) {
+            lock.lock();
+            try {
+                latencias[siguiente] = nanos;
+                siguiente = (siguiente + 1) % MUESTRAS;
+                registradas = Math.min(registradas + 1, MUESTRAS);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Percentil configurado de las latencias recientes, con el mínimo como piso. Mientras no
+        // haya suficientes muestras se usa el retraso inicial.
+        private long retrasoCobertura() {
+            long[] copia;
+            lock.lock();
+            try {
+                if (registradas < MUESTRAS_MINIMAS) {
+                    return politica.retrasoInicialNanos;
+                }
+                copia = Arrays.copyOf(latencias, registradas);
+            } finally {
+                lock.unlock();
+            }
+            Arrays.sort(copia);
+            int indice = (int) Math.min(copia.length - 1, Math.ceil(politica.percentil * copia.length) - 1);
+            return Math.max(politica.retrasoMinimoNanos, copia[Math.max(0, indice)]);
+        }
+
+        private void depositar() {
+            lock.lock();
+            try {
+                fichas = Math.min(FICHAS_MAXIMAS, fichas + politica.presupuestoPct / 100.0);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean retirar() {
+            lock.lock();
+            try {
+                if (fichas < 1.0) {
+                    return false;
+                }
+                fichas -= 1.0;
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package cl.dnl.intranet.ubb_scraper.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Cliente HTTP único para todas las peticiones a la intranet.
+ * Mantiene un solo java.net.http.HttpClient, de modo que las conexiones TCP/TLS se reutilizan entre
+ * peticiones (y se usa HTTP/2 si el servidor lo ofrece). Pide las respuestas comprimidas con gzip y
+ * aplica tiempos de espera explícitos. El parseo del HTML se deja a Jsoup.
+ *
+ * Cada petición (cada salto de una redirección incluido) se mide por endpoint de la intranet:
+ * intranet.peticiones (latencia, con el status, "timeout" o "error") e intranet.respuesta.bytes
+ * (tamaño del cuerpo ya descomprimido).
+ */
+@Component
+public class IntranetHttpClient {
+
+    public static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/138.0.0.0 Safari/537.36";
+    private static final int MAX_REDIRECCIONES = 10;
+
+    private final HttpClient httpClient;
+    private final Duration readTimeout;
+    // Límite adaptativo de peticiones simultáneas, cola acotada y circuit breaker, sumando todos
+    // los usuarios de esta instancia.
+    private final UpstreamGuard guard;
+    private final MeterRegistry meterRegistry;
+
+    public IntranetHttpClient(ExecutorService scrapingExecutor,
+                              MeterRegistry meterRegistry,
+                              UpstreamGuard guard,
+                              @Value("${app.intranet.connect-timeout-ms:5000}") long connectTimeoutMs,
+                              @Value("${app.intranet.read-timeout-ms:15000}") long readTimeoutMs) {
+        this.meterRegistry = meterRegistry;
+        this.readTimeout = Duration.ofMillis(readTimeoutMs);
+        this.guard = guard;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2) // Si el servidor no lo soporta, se usa HTTP/1.1
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                // Las redirecciones las seguimos nosotros para poder guardar cookies y conocer la URL final.
+                .followRedirects(HttpClient.Redirect.NEVER)
+                // Las tareas internas del cliente también corren en hilos virtuales, en vez de en
+                // su propio pool de hilos del sistema.
+                .executor(scrapingExecutor)
+                .build();
+    }
+
+    /**
+     * GET siguiendo redirecciones. Lanza IOException si la respuesta final no es 2xx.
+     */
+    public RespuestaIntranet get(String url) throws IOException {
+        return exigirExito(enviar("GET", url, null, Map.of(), null, true));
+    }
+
+    /**
+     * POST de formulario (application/x-www-form-urlencoded) siguiendo redirecciones.
+     * Lanza IOException si la respuesta final no es 2xx.
+     */
+    public RespuestaIntranet post(String url, Map<String, String> formulario) throws IOException {
+        return exigirExito(enviar("POST", url, formulario, Map.of(), null, true));
+    }
+
+    /**
+     * Petición genérica, sin validar el código de estado.
+     * @param formulario Campos del formulario para POST (puede ser null).
+     * @param headers Cabeceras adicionales.
+     * @param cookies Si no es null, se envían estas cookies y se actualizan con las Set-Cookie recibidas.
+     * @param seguirRedirecciones Si es false, se devuelve la primera respuesta tal cual (ej. un 302).
+     */
+    public RespuestaIntranet enviar(String metodo, String url, Map<String, String> formulario,
+                                    Map<String, String> headers, Map<String, String> cookies,
+                                    boolean seguirRedirecciones) throws IOException {
+        URI uri = URI.create(url);
+        for (int saltos = 0; ; saltos++) {
+            HttpResponse<byte[]> response = ejecutar(metodo, uri, formulario, headers, cookies);
+            guardarCookies(response, cookies);
+
+            int status = response.statusCode();
+            String location = response.headers().firstValue("Location").orElse(null);
+            boolean esRedireccion = status >= 300 && status < 400 && location != null;
+            if (!seguirRedirecciones || !esRedireccion) {
+                byte[] cuerpo = descomprimir(response);
+                bytesRespuesta(uri).record(cuerpo.length);
+                return new RespuestaIntranet(status, uri, response.headers(), cuerpo);
+            }
+            if (saltos >= MAX_REDIRECCIONES) {
+                throw new IOException("Demasiadas redirecciones desde " + url);
+            }
+
+            uri = uri.resolve(location);
+            // Igual que un navegador: tras 301/302/303 la siguiente petición es un GET sin cuerpo.
+            if (status != 307 && status != 308) {
+                metodo = "GET";
+                formulario = null;
+            }
+        }
+    }
+
+    /**
+     * Abre una petición sin descargar el cuerpo, para parsearlo mientras llega y poder dejar de
+     * leer en cuanto se encuentra lo que se busca. Sigue redirecciones y lanza IOException si la
+     * respuesta final no es 2xx. La respuesta ocupa un turno del UpstreamGuard hasta que se cierra.
+     */
+    public RespuestaStream abrir(String metodo, String url, Map<String, String> formulario) throws IOException {
+        URI uri = URI.create(url);
+        for (int saltos = 0; ; saltos++) {
+            long timeout = timeoutNanos(uri);
+            HttpRequest request = construirPeticion(metodo, uri, formulario, Map.of(), null, timeout);
+            HttpResponse<InputStream> response;
+            UpstreamGuard.Turno turno = guard.entrar();
+            try {
+                response = enviarMedido(turno, metodo, uri, request, timeout, HttpResponse.BodyHandlers.ofInputStream());
+            } catch (IOException | RuntimeException e) {
+                guard.salir(turno);
+                throw e;
+            } catch (InterruptedException e) {
+                guard.salir(turno);
+                Thread.currentThread().interrupt();
+                throw new IOException("Se interrumpió la petición a " + uri, e);
+            }
+
+            int status = response.statusCode();
+            String location = response.headers().firstValue("Location").orElse(null);
+            if (status >= 200 && status < 300) {
+                try {
+                    DistributionSummary bytes = bytesRespuesta(uri);
+                    return new RespuestaStream(status, uri, descomprimirStream(response),
+                            RespuestaIntranet.charsetDeContentType(response.headers().firstValue("Content-Type").orElse(null)),
+                            leidos -> {
+                                bytes.record(leidos);
+                                guard.salir(turno);
+                            });
+                } catch (IOException e) {
+                    response.body().close();
+                    guard.salir(turno);
+                    throw e;
+                }
+            }
+
+            response.body().close();
+            guard.salir(turno);
+            if (status < 300 || status >= 400 || location == null) {
+                throw new IOException("HTTP " + status + " al obtener " + uri);
+            }
+            if (saltos >= MAX_REDIRECCIONES) {
+                throw new IOException("Demasiadas redirecciones desde " + url);
+            }
+            uri = uri.resolve(location);
+            if (status != 307 && status != 308) {
+                metodo = "GET";
+                formulario = null;
+            }
+        }
+    }
+
+    private HttpResponse<byte[]> ejecutar(String metodo, URI uri, Map<String, String> formulario,
+                                          Map<String, String> headers, Map<String, String> cookies) throws IOException {
+        long timeout = timeoutNanos(uri);
+        HttpRequest request = construirPeticion(metodo, uri, formulario, headers, cookies, timeout);
+        UpstreamGuard.Turno turno = guard.entrar();
+        try {
+            return enviarMedido(turno, metodo, uri, request, timeout, HttpResponse.BodyHandlers.ofByteArray());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Se interrumpió la petición a " + uri, e);
+        } finally {
+            guard.salir(turno);
+        }
+    }
+
+    // Timeout de la petición: el de lectura configurado, o lo que quede del Plazo si es menos.
+    private long timeoutNanos(URI uri) throws Plazo.PlazoAgotadoException {
+        Plazo.exigirTiempo("llamar a " + endpoint(uri));
+        return Plazo.acotarNanos(readTimeout.toNanos());
+    }
+
+    // Envía la petición registrando su latencia por endpoint y resultado, y avisa al guard si falló
+    // (timeout, error de conexión o 5xx). En las respuestas en streaming se mide hasta recibir las
+    // cabeceras.
+    private <T> HttpResponse<T> enviarMedido(UpstreamGuard.Turno turno, String metodo, URI uri, HttpRequest request,
+                                             long timeoutNanos, HttpResponse.BodyHandler<T> handler) throws IOException, InterruptedException {
+        long inicio = System.nanoTime();
+        String resultado = "error";
+        boolean fallo = true;
+        boolean interrumpida = false;
+        try {
+            HttpResponse<T> response = httpClient.send(request, handler);
+            resultado = String.valueOf(response.statusCode());
+            fallo = response.statusCode() >= 500;
+            return response;
+        } catch (HttpTimeoutException e) {
+            if (timeoutNanos < readTimeout.toNanos()) {
+                // Se cortó por el plazo de nuestra petición, no porque la intranet excediera el
+                // timeout normal: no cuenta como fallo de la intranet.
+                resultado = "plazo";
+                interrumpida = true;
+                throw new Plazo.PlazoAgotadoException("Se agotó el plazo de la petición esperando a " + endpoint(uri));
+            }
+            resultado = "timeout";
+            throw e;
+        } catch (InterruptedException e) {
+            // La cancelamos nosotros (por ejemplo, por el plazo total): no dice nada de la intranet.
+            interrumpida = true;
+            throw e;
+        } finally {
+            long latencia = System.nanoTime() - inicio;
+            if (!interrumpida) {
+                guard.registrar(turno, fallo, latencia);
+            }
+            Timer.builder("intranet.peticiones")
+                    .description("Peticiones a la intranet")
+                    .tag("endpoint", endpoint(uri))
+                    .tag("metodo", metodo)
+                    .tag("status", resultado)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(latencia, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private DistributionSummary bytesRespuesta(URI uri) {
+        return DistributionSummary.builder("intranet.respuesta.bytes")
+                .description("Tamaño del cuerpo de las respuestas de la intranet, descomprimido")
+                .baseUnit("bytes")
+                .tag("endpoint", endpoint(uri))
+                .register(meterRegistry);
+    }
+
+    /**
+     * Nombre del endpoint para las métricas: el archivo .php de la ruta ("ver_calif_show.php"), sin
+     * el id de sesión. Las demás rutas se agrupan para no crear una serie por sesión.
+     */
+    static String endpoint(URI uri) {
+        String path = uri.getPath();
+        if (path == null || path.isEmpty() || path.equals("/")) return "raiz";
+        String sinBarra = path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+        String ultimo = sinBarra.substring(sinBarra.lastIndexOf('/') + 1);
+        if (ultimo.endsWith(".php")) return ultimo;
+        if (ultimo.equals("intranet")) return "intranet";
+        return "otro";
+    }
+
+    private HttpRequest construirPeticion(String metodo, URI uri, Map<String, String> formulario,
+                                          Map<String, String> headers, Map<String, String> cookies,
+                                          long timeoutNanos) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofNanos(timeoutNanos))
+                .header("User-Agent", USER_AGENT)
+                .header("Accept-Encoding", "gzip");
+        headers.forEach(builder::header);
+        if (cookies != null && !cookies.isEmpty()) {
+            StringJoiner cookieHeader = new StringJoiner("; ");
+            cookies.forEach((nombre, valor) -> cookieHeader.add(nombre + "=" + valor));
+            builder.header("Cookie", cookieHeader.toString());
+        }
+
+        if ("POST".equals(metodo)) {
+            builder.header("Content-Type", "application/x-www-form-urlencoded");
+            builder.POST(HttpRequest.BodyPublishers.ofString(codificarFormulario(formulario)));
+        } else {
+            builder.method(metodo, HttpRequest.BodyPublishers.noBody());
+        }
+        return builder.build();
+    }
+
+    private static RespuestaIntranet exigirExito(RespuestaIntranet respuesta) throws IOException {
+        if (respuesta.status() < 200 || respuesta.status() >= 300) {
+            throw new IOException("HTTP " + respuesta.status() + " al obtener " + respuesta.url());
+        }
+        return respuesta;
+    }
+
+    private static String codificarFormulario(Map<String, String> formulario) {
+        if (formulario == null) return "";
+        StringJoiner cuerpo = new StringJoiner("&");
+        formulario.forEach((campo, valor) -> cuerpo.add(
+                URLEncoder.encode(campo, StandardCharsets.UTF_8) + "=" + URLEncoder.encode(valor, StandardCharsets.UTF_8)));
+        return cuerpo.toString();
+    }
+
+    private static void guardarCookies(HttpResponse<?> response, Map<String, String> cookies) {
+        if (cookies == null) return;
+        for (String setCookie : response.headers().allValues("Set-Cookie")) {
+            String par = setCookie.split(";", 2)[0];
+            int igual = par.indexOf('=');
+            if (igual > 0) {
+                cookies.put(par.substring(0, igual).trim(), par.substring(igual + 1).trim());
+            }
+        }
+    }
+
+    private static InputStream descomprimirStream(HttpResponse<InputStream> response) throws IOException {
+        boolean gzip = response.headers().firstValue("Content-Encoding")
+                .map(v -> v.equalsIgnoreCase("gzip")).orElse(false);
+        return gzip ? new GZIPInputStream(response.body()) : response.body();
+    }
+
+    private static byte[] descomprimir(HttpResponse<byte[]> response) throws IOException {
+        byte[] cuerpo = response.body();
+        boolean gzip = response.headers().firstValue("Content-Encoding")
+                .map(v -> v.equalsIgnoreCase("gzip")).orElse(false);
+        if (!gzip || cuerpo.length == 0) {
+            return cuerpo;
+        }
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(cuerpo))) {
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package cl.dnl.intranet.ubb_scraper.service;
+
+import java.io.IOException;
+
+/**
+ * La petición a la intranet no se hizo: el circuito está abierto o ya hay demasiadas peticiones
+ * esperando turno. Los controladores la responden con 503 y, cuando existen, con los últimos datos
+ * conocidos.
+ */
+public class IntranetNoDisponibleException extends IOException {
+
+    public IntranetNoDisponibleException(String mensaje) {
+        super(mensaje);
+    }
+}
@@ -0,0 +1,114 @@
+package cl.dnl.intranet.ubb_scraper.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Caché pequeña en memoria con tamaño máximo (se descarta la entrada usada hace más tiempo)
+ * y tiempo de vida por entrada. Pensada para datos de corta duración asociados a una sesión.
+ * Las entradas vencidas no se borran: get() las ignora, pero getAunVencido() las sigue entregando
+ * como respaldo cuando no se puede obtener el dato fresco.
+ */
+public class LruTtlCache<K, V> {
+
+    private record Entrada<V>(V valor, long expiraEn) {}
+
+    private final long ttlMs;
+    private final Map<K, Entrada<V>> entradas;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LongAdder aciertos = new LongAdder();
+    private final LongAdder fallos = new LongAdder();
+
+    public LruTtlCache(int maxEntradas, long ttlMs) {
+        this.ttlMs = ttlMs;
+        // accessOrder = true: cada get() mueve la entrada al final, así la primera es la menos usada.
+        this.entradas = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entrada<V>> eldest) {
+                return size() > maxEntradas;
+            }
+        };
+    }
+
+    /**
+     * @return El valor guardado, o null si no existe o ya expiró.
+     */
+    public V get(K clave) {
+        lock.lock();
+        try {
+            Entrada<V> entrada = entradas.get(clave);
+            if (entrada == null) {
+                fallos.increment();
+                return null;
+            }
+            if (entrada.expiraEn() < System.currentTimeMillis()) {
+                fallos.increment();
+                return null;
+            }
+            aciertos.increment();
+            return entrada.valor();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return El último valor guardado aunque ya haya expirado, o null si no existe.
+     */
+    public V getAunVencido(K clave) {
+        lock.lock();
+        try {
+            Entrada<V> entrada = entradas.get(clave);
+            return entrada != null ? entrada.valor() : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void put(K clave, V valor) {
+        lock.lock();
+        try {
+            entradas.put(clave, new Entrada<>(valor, System.currentTimeMillis() + ttlMs));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidate(K clave) {
+        lock.lock();
+        try {
+            entradas.remove(clave);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Publica los aciertos y fallos de get() como cache.gets{cache=nombre, result=hit|miss} y el
+     * número de entradas como cache.size, con los mismos nombres que usa Micrometer para otras cachés.
+     */
+    public LruTtlCache<K, V> registrarMetricas(MeterRegistry registry, String nombre) {
+        FunctionCounter.builder("cache.gets", aciertos, LongAdder::sum)
+                .tag("cache", nombre).tag("result", "hit").register(registry);
+        FunctionCounter.builder("cache.gets", fallos, LongAdder::sum)
+                .tag("cache", nombre).tag("result", "miss").register(registry);
+        Gauge.builder("cache.size", this, LruTtlCache::tamano)
+                .tag("cache", nombre).register(registry);
+        return this;
+    }
+
+    private int tamano() {
+        lock.lock();
+        try {
+            return entradas.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package cl.dnl.intranet.ubb_scraper.service;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plazo (deadline) de la petición en curso, guardado por hilo. Lo fija PlazoInterceptor al entrar
+ * una petición a /api, ContextoExecutorService lo pasa a las tareas en paralelo y cada petición a
+ * la intranet lo respeta: ningún timeout, espera de turno, cobertura ni reintento va más allá.
+ * Sin plazo fijado (tareas programadas, trabajo en segundo plano con sinPlazo, el trabajo
+ * compartido de SingleFlight, pruebas) no hay límite.
+ */
+public final class Plazo {
+
+    private static final ThreadLocal<Long> LIMITE_NANOS = new ThreadLocal<>();
+
+    private Plazo() {
+    }
+
+    /** Fija el plazo del hilo actual en ahora + duración. */
+    public static void fijar(long duracion, TimeUnit unidad) {
+        LIMITE_NANOS.set(System.nanoTime() + unidad.toNanos(duracion));
+    }
+
+    public static void limpiar() {
+        LIMITE_NANOS.remove();
+    }
+
+    /** Instante límite (en System.nanoTime()) del hilo actual, o null si no tiene plazo. */
+    public static Long actual() {
+        return LIMITE_NANOS.get();
+    }
+
+    /** Restablece un límite obtenido con actual() (null lo quita). */
+    public static void restablecer(Long limiteNanos) {
+        if (limiteNanos == null) {
+            LIMITE_NANOS.remove();
+        } else {
+            LIMITE_NANOS.set(limiteNanos);
+        }
+    }
+
+    /**
+     * Envuelve una tarea para que corra sin plazo, aunque el executor le pase el de quien la envió.
+     * Para el trabajo en segundo plano, que no debe cortarse cuando termina la petición que lo lanzó.
+     */
+    public static Runnable sinPlazo(Runnable tarea) {
+        return () -> {
+            Long anterior = actual();
+            limpiar();
+            try {
+                tarea.run();
+            } finally {
+                restablecer(anterior);
+            }
+        };
+    }
+
+    /**
+     * Envuelve una tarea para que corra con su propio plazo de ahora + duración (contado desde que
+     * empieza), en lugar del que le pase el executor. Para respuestas en streaming, que pueden durar
+     * más que el plazo de la petición que las abrió.
+     */
+    public static Runnable conPlazo(long duracion, TimeUnit unidad, Runnable tarea) {
+        return () -> {
+            Long anterior = actual();
+            fijar(duracion, unidad);
+            try {
+                tarea.run();
+            } finally {
+                restablecer(anterior);
+            }
+        };
+    }
+
+    /** Nanosegundos que quedan, o Long.MAX_VALUE si no hay plazo. Puede ser negativo. */
+    public static long restanteNanos() {
+        Long limite = LIMITE_NANOS.get();
+        return limite == null ? Long.MAX_VALUE : limite - System.nanoTime();
+    }
+
+    /** Lo menor entre el máximo dado y lo que queda del plazo. */
+    public static long acotarNanos(long maximoNanos) {
+        return Math.min(maximoNanos, restanteNanos());
+    }
+
+    /**
+     * @throws PlazoAgotadoException Si el plazo ya venció.
+     */
+    public static void exigirTiempo(String operacion) throws PlazoAgotadoException {
+        if (restanteNanos() <= 0) {
+            throw new PlazoAgotadoException("Se agotó el plazo de la petición antes de " + operacion);
+        }
+    }
+
+    /** El plazo de la petición se agotó; los controladores la responden con 504. */
+    public static class PlazoAgotadoException extends IOException {
+
+        public PlazoAgotadoException(String mensaje) {
+            super(mensaje);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package cl.dnl.intranet.ubb_scraper.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limitador de tasa simple: reparte los permisos a intervalos regulares (sin ráfagas).
+ * adquirir() bloquea el hilo hasta que le toque su turno.
+ */
+public class RateLimiter {
+
+    private final long intervaloNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private long siguienteTurno = System.nanoTime();
+
+    public RateLimiter(double permisosPorSegundo) {
+        this.intervaloNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permisosPorSegundo);
+    }
+
+    public void adquirir() throws InterruptedException {
+        long espera;
+        lock.lock();
+        try {
+            long ahora = System.nanoTime();
+            long turno = Math.max(siguienteTurno, ahora);
+            siguienteTurno = turno + intervaloNanos;
+            espera = turno - ahora;
+        } finally {
+            lock.unlock();
+        }
+        if (espera > 0) {
+            TimeUnit.NANOSECONDS.sleep(espera);
+        }
+    }
+}
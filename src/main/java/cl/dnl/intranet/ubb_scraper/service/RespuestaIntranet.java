@@ -0,0 +1,71 @@
+package cl.dnl.intranet.ubb_scraper.service;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Respuesta ya descargada (y descomprimida) de la intranet.
+ * El cuerpo se guarda como bytes; Jsoup solo se usa para parsearlo cuando hace falta.
+ *
+ * @param status Código HTTP de la última respuesta.
+ * @param url    URL final, después de seguir las redirecciones.
+ */
+public record RespuestaIntranet(int status, URI url, HttpHeaders headers, byte[] cuerpo) {
+
+    private static final Pattern CHARSET = Pattern.compile("charset=[\"']?([\\w.:-]+)", Pattern.CASE_INSENSITIVE);
+
+    public String header(String nombre) {
+        return headers.firstValue(nombre).orElse(null);
+    }
+
+    /**
+     * Parsea el cuerpo como HTML. Si la cabecera no indica la codificación, Jsoup la detecta
+     * a partir del propio documento (meta charset / BOM).
+     */
+    public Document documento() throws IOException {
+        String charset = charsetDeCabecera();
+        return Jsoup.parse(new ByteArrayInputStream(cuerpo), charset, url.toString());
+    }
+
+    /**
+     * Devuelve el cuerpo como texto, usando la codificación de la cabecera, la declarada en el
+     * HTML o UTF-8, en ese orden.
+     */
+    public String texto() {
+        String charset = charsetDeCabecera();
+        if (charset == null) {
+            charset = charsetDeclarado(cuerpo, Math.min(cuerpo.length, 2048));
+        }
+        try {
+            return new String(cuerpo, charset != null ? Charset.forName(charset) : StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return new String(cuerpo, StandardCharsets.UTF_8);
+        }
+    }
+
+    private String charsetDeCabecera() {
+        return charsetDeContentType(header("Content-Type"));
+    }
+
+    // Codificación indicada en una cabecera Content-Type, o null.
+    static String charsetDeContentType(String contentType) {
+        if (contentType == null) return null;
+        Matcher m = CHARSET.matcher(contentType);
+        return m.find() ? m.group(1) : null;
+    }
+
+    // Codificación declarada en los primeros bytes de un HTML (meta charset), o null.
+    static String charsetDeclarado(byte[] inicio, int largo) {
+        Matcher m = CHARSET.matcher(new String(inicio, 0, largo, StandardCharsets.ISO_8859_1));
+        return m.find() ? m.group(1) : null;
+    }
+}
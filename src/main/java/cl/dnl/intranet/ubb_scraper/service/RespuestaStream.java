@@ -0,0 +1,122 @@
+package cl.dnl.intranet.ubb_scraper.service;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongConsumer;
+
+/**
+ * Respuesta de la intranet cuyo cuerpo todavía no se ha descargado: se va leyendo a medida que se
+ * parsea. Al cerrarla antes de llegar al final se descarta lo que falta si es poco, para que la
+ * conexión HTTP/1.1 pueda reutilizarse; si queda mucho se corta la conexión y no se descarga.
+ * Siempre debe cerrarse (try-with-resources).
+ */
+public final class RespuestaStream implements Closeable {
+
+    private static final int BYTES_DETECCION_CHARSET = 4096;
+    // Lo que se acepta leer y descartar al cerrar antes del final. Cerrar el cuerpo a medias obliga
+    // al cliente a cerrar la conexión, y abrir otra (TCP y TLS) cuesta más que leer unos KB.
+    private static final int BYTES_MAXIMOS_DESCARTE = 64 * 1024;
+
+    private final int status;
+    private final URI url;
+    private final BufferedInputStream cuerpo;
+    private final String charsetCabecera;
+    // Recibe los bytes que se alcanzaron a leer del cuerpo.
+    private final LongConsumer alCerrar;
+    private long bytesLeidos;
+    private final AtomicBoolean cerrada = new AtomicBoolean(false);
+
+    RespuestaStream(int status, URI url, InputStream cuerpo, String charsetCabecera, LongConsumer alCerrar) {
+        this.status = status;
+        this.url = url;
+        this.cuerpo = new BufferedInputStream(new ContadorBytes(cuerpo), BYTES_DETECCION_CHARSET * 2);
+        this.charsetCabecera = charsetCabecera;
+        this.alCerrar = alCerrar;
+    }
+
+    public int status() {
+        return status;
+    }
+
+    public URI url() {
+        return url;
+    }
+
+    /**
+     * Lector del cuerpo con la codificación de la cabecera o, si no viene, la declarada en el
+     * comienzo del HTML (meta charset). Por defecto, UTF-8.
+     */
+    public Reader reader() throws IOException {
+        String charset = charsetCabecera;
+        if (charset == null) {
+            cuerpo.mark(BYTES_DETECCION_CHARSET);
+            byte[] inicio = cuerpo.readNBytes(BYTES_DETECCION_CHARSET);
+            cuerpo.reset();
+            charset = RespuestaIntranet.charsetDeclarado(inicio, inicio.length);
+        }
+        Charset cs;
+        try {
+            cs = charset != null ? Charset.forName(charset) : StandardCharsets.UTF_8;
+        } catch (IllegalArgumentException e) {
+            cs = StandardCharsets.UTF_8;
+        }
+        return new InputStreamReader(cuerpo, cs);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (cerrada.compareAndSet(false, true)) {
+            try {
+                descartarResto();
+                cuerpo.close();
+            } finally {
+                alCerrar.accept(bytesLeidos);
+            }
+        }
+    }
+
+    // Lee hasta el final si faltan como máximo BYTES_MAXIMOS_DESCARTE. Los errores se ignoran:
+    // en el peor caso la conexión se cierra, que es lo mismo que pasaría sin descartar.
+    private void descartarResto() {
+        byte[] buffer = new byte[8192];
+        long descartados = 0;
+        try {
+            int n;
+            while (descartados < BYTES_MAXIMOS_DESCARTE && (n = cuerpo.read(buffer)) >= 0) {
+                descartados += n;
+            }
+        } catch (IOException e) {
+            // Se cierra igual.
+        }
+    }
+
+    private final class ContadorBytes extends FilterInputStream {
+
+        ContadorBytes(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) bytesLeidos++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) bytesLeidos += n;
+            return n;
+        }
+    }
+}
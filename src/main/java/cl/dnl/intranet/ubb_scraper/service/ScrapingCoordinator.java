@@ -0,0 +1,425 @@
+package cl.dnl.intranet.ubb_scraper.service;
+
+import cl.dnl.intranet.ubb_scraper.dto.AsignaturaDto;
+import cl.dnl.intranet.ubb_scraper.dto.BootstrapDto;
+import cl.dnl.intranet.ubb_scraper.dto.CarreraDto;
+import cl.dnl.intranet.ubb_scraper.dto.DashboardDataDto;
+import cl.dnl.intranet.ubb_scraper.dto.DatosAlumnoDto;
+import cl.dnl.intranet.ubb_scraper.dto.HistorialEventoDto;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+// Capa que se ubica delante de UbbScrapingService para los endpoints más pesados.
+// Si llegan varias peticiones idénticas al mismo tiempo (por ejemplo, varias pestañas abiertas o
+// recargas seguidas), solo la primera consulta a la intranet y las demás reciben el mismo resultado.
+// Las asignaturas se sirven desde el último snapshot guardado y, si está viejo, se refrescan en
+// segundo plano (stale-while-revalidate).
+@Service
+public class ScrapingCoordinator {
+
+    private static final Logger log = LoggerFactory.getLogger(ScrapingCoordinator.class);
+
+    // Clave de agrupación: la sesión, la operación y (si aplica) la carrera consultada.
+    private record ClaveScrape(String sessionId, String operacion, String carrera) {}
+
+    private final UbbScrapingService scrapingService;
+    private final GradeSnapshotService snapshotService;
+    private final SesionUpstreamPool sesionPool;
+    private final ExecutorService scrapingExecutor;
+    private final Duration ttlSnapshot;
+    private final int maxPeriodosHistorial;
+    private final SingleFlight<ClaveScrape, DashboardDataDto> dashboards;
+    private final SingleFlight<ClaveScrape, List<AsignaturaDto>> asignaturas;
+
+    // Cuántas consultas de asignaturas se sirvieron con un snapshot fresco, con uno vencido
+    // (y refresco en segundo plano) o sin snapshot (scrape en vivo).
+    private final Counter snapshotsFrescos;
+    private final Counter snapshotsVencidos;
+    private final Counter snapshotsAusentes;
+    // Periodos del historial servidos desde la BD (cerrados e inmutables) o consultados a la intranet.
+    private final Counter historialDesdeBd;
+    private final Counter historialDesdeIntranet;
+
+    public ScrapingCoordinator(UbbScrapingService scrapingService,
+                               GradeSnapshotService snapshotService,
+                               SesionUpstreamPool sesionPool,
+                               ExecutorService scrapingExecutor,
+                               MeterRegistry meterRegistry,
+                               @Value("${app.snapshots.ttl-ms:600000}") long ttlSnapshotMs,
+                               @Value("${app.historial.max-periodos-concurrentes:3}") int maxPeriodosHistorial) {
+        this.scrapingService = scrapingService;
+        this.snapshotService = snapshotService;
+        this.sesionPool = sesionPool;
+        this.scrapingExecutor = scrapingExecutor;
+        this.dashboards = new SingleFlight<>(scrapingExecutor);
+        this.asignaturas = new SingleFlight<>(scrapingExecutor);
+        this.ttlSnapshot = Duration.ofMillis(ttlSnapshotMs);
+        this.maxPeriodosHistorial = maxPeriodosHistorial;
+        this.snapshotsFrescos = contadorSnapshots(meterRegistry, "fresco");
+        this.snapshotsVencidos = contadorSnapshots(meterRegistry, "vencido");
+        this.snapshotsAusentes = contadorSnapshots(meterRegistry, "ausente");
+        this.historialDesdeBd = Counter.builder("historial.periodos").tag("origen", "bd").register(meterRegistry);
+        this.historialDesdeIntranet = Counter.builder("historial.periodos").tag("origen", "intranet").register(meterRegistry);
+    }
+
+    private static Counter contadorSnapshots(MeterRegistry registry, String resultado) {
+        return Counter.builder("snapshots.consultas")
+                .description("Consultas de asignaturas según el estado del snapshot guardado")
+                .tag("resultado", resultado)
+                .register(registry);
+    }
+
+    public DashboardDataDto getDashboardData(String sessionId) throws IOException {
+        ClaveScrape clave = new ClaveScrape(sessionId, "dashboard", null);
+        return dashboards.ejecutar(clave, () -> scrapingService.getDashboardData(sessionId));
+    }
+
+    public List<AsignaturaDto> getParsedAsignaturas(String sessionId, CarreraDto carrera) throws IOException {
+        String rut = sesionPool.rutDeSesion(sessionId);
+        if (rut == null) {
+            // No sabemos de quién es la sesión (por ejemplo, tras reiniciar la aplicación):
+            // no hay snapshot que buscar, así que consultamos en vivo.
+            ClaveScrape clave = new ClaveScrape(sessionId, "asignaturas", carrera.valorCompleto());
+            return asignaturas.ejecutar(clave, () -> scrapingService.getParsedAsignaturas(sessionId, carrera));
+        }
+
+        // El año y el periodo salen de lo ya guardado, para que servir el snapshot no espere a la
+        // intranet; solo se consultan si todavía no se conocen (por ejemplo, tras reiniciar).
+        UbbScrapingService.PeriodoAcademico actual = scrapingService.periodoDeSesion(sessionId);
+        String ano = actual.anio();
+        String periodo = actual.periodo();
+
+        Optional<GradeSnapshotService.Snapshot> snapshot = snapshotService.obtener(rut, carrera.valorCompleto(), ano, periodo);
+        if (snapshot.isPresent()) {
+            if (snapshot.get().actualizadoEn().plus(ttlSnapshot).isBefore(Instant.now())) {
+                snapshotsVencidos.increment();
+                refrescarEnSegundoPlano(sessionId, rut, carrera, ano, periodo);
+            } else {
+                snapshotsFrescos.increment();
+            }
+            return snapshot.get().asignaturas();
+        }
+
+        snapshotsAusentes.increment();
+        return scrapearYGuardar(sessionId, rut, carrera, ano, periodo);
+    }
+
+    /**
+     * Consulta las asignaturas en vivo avisando cada una apenas se calcula (ver
+     * UbbScrapingService#getParsedAsignaturas con callback) y guarda el resultado como snapshot.
+     * Las asignaturas cuya página falló se vuelven a avisar con el valor guardado, si lo había.
+     */
+    public List<AsignaturaDto> streamParsedAsignaturas(String sessionId, CarreraDto carrera,
+                                                       BiConsumer<Integer, AsignaturaDto> alCalcular) throws IOException {
+        List<AsignaturaDto> resultado;
+        try {
+            resultado = scrapingService.getParsedAsignaturas(sessionId, carrera, alCalcular);
+        } catch (IntranetNoDisponibleException | Plazo.PlazoAgotadoException e) {
+            // Intranet caída, saturada o sin responder a tiempo: se envía el último snapshot, si existe.
+            List<AsignaturaDto> guardadas = ultimoSnapshot(sessionId, carrera).orElseThrow(() -> e);
+            for (int i = 0; i < guardadas.size(); i++) {
+                alCalcular.accept(i, guardadas.get(i));
+            }
+            return guardadas;
+        }
+        String rut = sesionPool.rutDeSesion(sessionId);
+        if (rut == null) {
+            return resultado;
+        }
+        UbbScrapingService.PeriodoAcademico actual = scrapingService.periodoDeSesion(sessionId);
+        List<AsignaturaDto> guardadas = guardarSnapshot(rut, carrera, actual.anio(), actual.periodo(), resultado);
+        for (int i = 0; i < guardadas.size() && i < resultado.size(); i++) {
+            if (!guardadas.get(i).equals(resultado.get(i))) {
+                alCalcular.accept(i, guardadas.get(i));
+            }
+        }
+        return guardadas;
+    }
+
+    private Optional<List<AsignaturaDto>> ultimoSnapshot(String sessionId, CarreraDto carrera) throws IOException {
+        String rut = sesionPool.rutDeSesion(sessionId);
+        if (rut == null) {
+            return Optional.empty();
+        }
+        // Con la intranet caída no se puede consultar el periodo: solo sirve lo ya conocido.
+        Optional<UbbScrapingService.PeriodoAcademico> actual = scrapingService.periodoConocido(sessionId);
+        if (actual.isEmpty()) {
+            return Optional.empty();
+        }
+        return snapshotService.obtener(rut, carrera.valorCompleto(), actual.get().anio(), actual.get().periodo())
+                .map(GradeSnapshotService.Snapshot::asignaturas);
+    }
+
+    /**
+     * Consulta en vivo las asignaturas (sin mirar el snapshot) y actualiza el snapshot,
+     * lo que dispara un CalificacionesCambiadasEvent si algo cambió.
+     */
+    public List<AsignaturaDto> refrescar(String sessionId, String rut, CarreraDto carrera) throws IOException {
+        UbbScrapingService.PeriodoAcademico actual = scrapingService.periodoDeSesion(sessionId);
+        return scrapearYGuardar(sessionId, rut, carrera, actual.anio(), actual.periodo());
+    }
+
+    private List<AsignaturaDto> scrapearYGuardar(String sessionId, String rut, CarreraDto carrera,
+                                                 String ano, String periodo) throws IOException {
+        ClaveScrape clave = new ClaveScrape(sessionId, "asignaturas", carrera.valorCompleto());
+        return asignaturas.ejecutar(clave, () -> {
+            List<AsignaturaDto> resultado = scrapingService.getParsedAsignaturas(sessionId, carrera);
+            return guardarSnapshot(rut, carrera, ano, periodo, resultado);
+        });
+    }
+
+    // El refresco comparte la clave de agrupación con la consulta en vivo, así que aunque lleguen
+    // muchas peticiones con el snapshot vencido solo se hace un scrape a la vez. Corre sin el plazo
+    // de la petición que lo disparó, que ya se respondió con el snapshot.
+    private void refrescarEnSegundoPlano(String sessionId, String rut, CarreraDto carrera, String ano, String periodo) {
+        scrapingExecutor.execute(Plazo.sinPlazo(() -> {
+            try {
+                scrapearYGuardar(sessionId, rut, carrera, ano, periodo);
+            } catch (IOException e) {
+                log.warn("No se pudo refrescar el snapshot de {}: {}", rut, e.getMessage());
+            }
+        }));
+    }
+
+    // Devuelve lo que quedó guardado, que completa con el snapshot anterior las asignaturas cuya
+    // página falló. Un fallo al guardar no debe hacer fallar la respuesta: las notas ya se obtuvieron.
+    private List<AsignaturaDto> guardarSnapshot(String rut, CarreraDto carrera, String ano, String periodo,
+                                                List<AsignaturaDto> resultado) {
+        try {
+            return snapshotService.guardar(rut, carrera.valorCompleto(), ano, periodo, resultado);
+        } catch (RuntimeException e) {
+            log.error("No se pudo guardar el snapshot de {}", rut, e);
+            return resultado;
+        }
+    }
+
+    /**
+     * Historial de notas: todas las carreras del alumno en cada año y periodo desde su ingreso
+     * (periodos 1 y 2) hasta el actual, avisando cada periodo apenas está listo.
+     *
+     * Los periodos ya cerrados que se guardaron antes como inmutables se envían desde la BD sin
+     * consultar la intranet. Los demás se consultan en paralelo, a lo más maxPeriodosHistorial a la
+     * vez para este alumno, y si se obtuvieron completos se guardan como inmutables. El periodo
+     * actual se sirve igual que getParsedAsignaturas (snapshot con refresco).
+     *
+     * Consultar un periodo cerrado deja seleccionado ese año y periodo en la sesión de la intranet,
+     * así que se hace en una sesión aparte abierta con la clave guardada del alumno. Si no se puede
+     * abrir, se usa la misma sesión y al terminar se vuelve a seleccionar el periodo actual.
+     * @param alObtener Recibe cada evento "periodo" o "error", desde distintos hilos.
+     * @return Cuántos periodos se enviaron.
+     */
+    public int streamHistorial(String sessionId, Consumer<HistorialEventoDto> alObtener) throws IOException {
+        DatosAlumnoDto datos = scrapingService.getDatosAlumno(sessionId);
+        String periodoActual = scrapingService.obtenerPeriodoActual(sessionId);
+        String rut = sesionPool.rutDeSesion(sessionId);
+        Map<GradeSnapshotService.PeriodoGuardado, List<AsignaturaDto>> guardados =
+                rut == null ? Map.of() : snapshotService.obtenerInmutables(rut);
+
+        int total = 0;
+        boolean hayCerrados = false;
+        List<PeriodoPorConsultar> porConsultar = new ArrayList<>();
+        for (CarreraDto carrera : datos.carreras()) {
+            for (GradeSnapshotService.PeriodoGuardado p : periodosCursados(carrera, datos.anio(), periodoActual)) {
+                total++;
+                List<AsignaturaDto> guardado = guardados.get(p);
+                if (guardado != null) {
+                    historialDesdeBd.increment();
+                    alObtener.accept(HistorialEventoDto.periodo(p.carrera(), p.ano(), p.periodo(), guardado, true));
+                    continue;
+                }
+                boolean actual = p.ano().equals(datos.anio()) && p.periodo().equals(periodoActual);
+                hayCerrados |= !actual;
+                porConsultar.add(new PeriodoPorConsultar(carrera, p, actual));
+            }
+        }
+
+        String sesionAparte = hayCerrados ? abrirSesionAparte(rut) : null;
+        String sesionCerrados = sesionAparte != null ? sesionAparte : sessionId;
+        Semaphore permisos = new Semaphore(maxPeriodosHistorial);
+        List<Future<?>> tareas = new ArrayList<>();
+        try {
+            for (PeriodoPorConsultar pendiente : porConsultar) {
+                CarreraDto carrera = pendiente.carrera();
+                GradeSnapshotService.PeriodoGuardado p = pendiente.periodo();
+                tareas.add(scrapingExecutor.submit(() -> {
+                    try {
+                        permisos.acquire();
+                        try {
+                            List<AsignaturaDto> asignaturas = pendiente.actual()
+                                    ? getParsedAsignaturas(sessionId, carrera)
+                                    : scrapearPeriodoCerrado(sessionId, sesionCerrados, rut, carrera, p);
+                            alObtener.accept(HistorialEventoDto.periodo(p.carrera(), p.ano(), p.periodo(), asignaturas, false));
+                        } finally {
+                            permisos.release();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (IOException | RuntimeException e) {
+                        log.warn("No se pudo obtener el periodo {}-{} de la carrera {}: {}",
+                                p.ano(), p.periodo(), p.carrera(), e.getMessage());
+                        alObtener.accept(HistorialEventoDto.error(p.carrera(), p.ano(), p.periodo(), e.getMessage()));
+                    }
+                }));
+            }
+
+            // Cada consulta a la intranet respeta el Plazo del hilo (el del stream, que fija el
+            // controlador igual a su timeout), así que no hace falta otro límite aquí.
+            try {
+                for (Future<?> tarea : tareas) {
+                    try {
+                        tarea.get();
+                    } catch (ExecutionException | CancellationException e) {
+                        // Los errores de cada periodo ya se manejan dentro de la tarea.
+                    }
+                }
+            } catch (InterruptedException e) {
+                tareas.forEach(tarea -> tarea.cancel(true));
+                Thread.currentThread().interrupt();
+                throw new IOException("Se interrumpió la obtención del historial.", e);
+            }
+        } finally {
+            if (sesionAparte != null) {
+                scrapingService.cerrarSesionSegundoPlano(sesionAparte);
+            } else if (hayCerrados) {
+                restablecerPeriodo(sessionId, datos, periodoActual);
+            }
+        }
+        return total;
+    }
+
+    private record PeriodoPorConsultar(CarreraDto carrera, GradeSnapshotService.PeriodoGuardado periodo, boolean actual) {}
+
+    // Sesión aparte para los periodos cerrados, o null si no se pudo abrir (no se sabe de quién es
+    // la sesión, no hay clave guardada o la intranet no respondió).
+    private String abrirSesionAparte(String rut) {
+        if (rut == null) {
+            return null;
+        }
+        try {
+            return scrapingService.abrirSesionAparte(rut);
+        } catch (IOException | RuntimeException e) {
+            log.warn("No se pudo abrir una sesión aparte para el historial: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    // Un error aquí no invalida el historial ya enviado; a lo más la sesión queda en otro periodo
+    // hasta que el alumno cambie de carrera o vuelva a entrar.
+    private void restablecerPeriodo(String sessionId, DatosAlumnoDto datos, String periodoActual) {
+        try {
+            scrapingService.restablecerPeriodo(sessionId, datos, periodoActual);
+        } catch (IOException | RuntimeException e) {
+            log.warn("No se pudo volver a seleccionar el periodo actual: {}", e.getMessage());
+        }
+    }
+
+    // Un periodo cerrado se consulta una sola vez a la vez por sesión y, si todas sus asignaturas se
+    // obtuvieron bien, queda guardado como inmutable (aunque no tenga asignaturas). Si alguna falló
+    // no se guarda, para no dejar fijo un promedio en 0 que solo se debió a un error.
+    // Se agrupa por la sesión del alumno, pero se consulta en sesionConsulta (la sesión aparte).
+    private List<AsignaturaDto> scrapearPeriodoCerrado(String sessionId, String sesionConsulta, String rut, CarreraDto carrera,
+                                                       GradeSnapshotService.PeriodoGuardado p) throws IOException {
+        ClaveScrape clave = new ClaveScrape(sessionId, "historial-" + p.ano() + "-" + p.periodo(), carrera.valorCompleto());
+        return asignaturas.ejecutar(clave, () -> {
+            historialDesdeIntranet.increment();
+            UbbScrapingService.AsignaturasPeriodo resultado =
+                    scrapingService.getAsignaturasPeriodo(sesionConsulta, carrera, p.ano(), p.periodo());
+            if (rut != null && resultado.completas()) {
+                try {
+                    snapshotService.guardar(rut, carrera.valorCompleto(), p.ano(), p.periodo(), resultado.asignaturas(), true);
+                } catch (RuntimeException e) {
+                    log.error("No se pudo guardar el periodo {}-{} de {}", p.ano(), p.periodo(), rut, e);
+                }
+            }
+            return resultado.asignaturas();
+        });
+    }
+
+    /**
+     * Años y periodos (1 y 2) desde el ingreso a la carrera hasta el periodo actual, del más reciente
+     * al más antiguo para que lo más consultado llegue primero. Si el año de ingreso o el actual no
+     * son números, solo se devuelve el periodo actual.
+     */
+    static List<GradeSnapshotService.PeriodoGuardado> periodosCursados(CarreraDto carrera, String anoActual, String periodoActual) {
+        List<GradeSnapshotService.PeriodoGuardado> periodos = new ArrayList<>();
+        int desde;
+        int hasta;
+        int periodoIngreso;
+        int periodoHasta;
+        try {
+            desde = Integer.parseInt(carrera.alcAnoIngreso().trim());
+            hasta = Integer.parseInt(anoActual.trim());
+            periodoIngreso = parsearPeriodo(carrera.alcPeriodo());
+            periodoHasta = parsearPeriodo(periodoActual);
+        } catch (NumberFormatException | NullPointerException e) {
+            periodos.add(new GradeSnapshotService.PeriodoGuardado(carrera.valorCompleto(), anoActual, periodoActual));
+            return periodos;
+        }
+        for (int ano = hasta; ano >= desde; ano--) {
+            for (int periodo = 2; periodo >= 1; periodo--) {
+                if (ano == hasta && periodo > periodoHasta) continue;
+                if (ano == desde && periodo < periodoIngreso) continue;
+                periodos.add(new GradeSnapshotService.PeriodoGuardado(carrera.valorCompleto(),
+                        String.valueOf(ano), String.valueOf(periodo)));
+            }
+        }
+        return periodos;
+    }
+
+    // Periodos distintos de 1 y 2 (por ejemplo, de verano) se tratan como el segundo.
+    private static int parsearPeriodo(String periodo) {
+        return Integer.parseInt(periodo.trim()) <= 1 ? 1 : 2;
+    }
+
+    /**
+     * Datos de la primera carga de la pantalla principal en una sola llamada.
+     * La página inicial y el periodo se leen de sus cachés, así que solo se piden una vez, y las
+     * notas de cada asignatura se consultan en paralelo. Ambas partes se agrupan con las llamadas
+     * individuales equivalentes que estén en curso.
+     */
+    public BootstrapDto getBootstrap(String sessionId) throws IOException {
+        DashboardDataDto dashboard = getDashboardData(sessionId);
+        if (dashboard.carreras().isEmpty()) {
+            return new BootstrapDto(dashboard, null, List.of());
+        }
+
+        // La carrera por defecto es la primera de la lista, igual que en el frontend.
+        CarreraDto carrera = dashboard.carreras().get(0);
+        return new BootstrapDto(dashboard, carrera, getParsedAsignaturas(sessionId, carrera));
+    }
+
+    /**
+     * Empieza a cargar en segundo plano los datos de la pantalla principal, justo después del login.
+     * Mientras el navegador cambia de página, la página inicial queda en su caché y las notas de la
+     * carrera por defecto quedan en el snapshot; si la petición del frontend llega antes de que
+     * termine, se une a este mismo scrape en vez de empezar otro. No lleva el plazo del login.
+     */
+    public void precalentar(String sessionId) {
+        scrapingExecutor.execute(Plazo.sinPlazo(() -> {
+            try {
+                getBootstrap(sessionId);
+            } catch (IOException | RuntimeException e) {
+                log.warn("No se pudieron precargar los datos de la sesión: {}", e.getMessage());
+            }
+        }));
+    }
+}
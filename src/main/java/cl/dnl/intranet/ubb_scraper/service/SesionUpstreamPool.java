@@ -0,0 +1,136 @@
+package cl.dnl.intranet.ubb_scraper.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Guarda las sesiones ya autenticadas en la intranet, una por RUT, para no repetir el login
+ * completo (tres peticiones) cada vez que el mismo alumno vuelve a entrar.
+ * Las sesiones sin uso expiran solas y el total de sesiones guardadas está acotado.
+ */
+@Component
+public class SesionUpstreamPool {
+
+    /**
+     * Sesión autenticada en la intranet.
+     * La contraseña no se guarda: solo un hash con sal aleatoria para comprobar que quien vuelve a
+     * entrar usa la misma clave con la que se abrió la sesión.
+     */
+    public static final class SesionUpstream {
+        private final String sessionId;
+        private final Map<String, String> cookies;
+        private final byte[] sal;
+        private final byte[] huellaClave;
+        private volatile long ultimaValidacion;
+
+        private SesionUpstream(String sessionId, Map<String, String> cookies, byte[] sal, byte[] huellaClave) {
+            this.sessionId = sessionId;
+            this.cookies = new ConcurrentHashMap<>(cookies);
+            this.sal = sal;
+            this.huellaClave = huellaClave;
+            this.ultimaValidacion = System.currentTimeMillis();
+        }
+
+        public String getSessionId() {
+            return sessionId;
+        }
+
+        public Map<String, String> getCookies() {
+            return cookies;
+        }
+    }
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final LruTtlCache<String, SesionUpstream> sesiones;
+    // Índice inverso sessionId -> RUT, para saber de quién son las peticiones que solo traen el sessionId.
+    private final LruTtlCache<String, String> rutPorSesion;
+    private final long revalidarMs;
+
+    public SesionUpstreamPool(MeterRegistry meterRegistry,
+                              @Value("${app.sesiones.max-sesiones:500}") int maxSesiones,
+                              @Value("${app.sesiones.inactividad-ms:900000}") long inactividadMs,
+                              @Value("${app.sesiones.revalidar-ms:300000}") long revalidarMs) {
+        this.sesiones = new LruTtlCache<String, SesionUpstream>(maxSesiones, inactividadMs)
+                .registrarMetricas(meterRegistry, "sesiones-upstream");
+        this.rutPorSesion = new LruTtlCache<>(maxSesiones, inactividadMs);
+        this.revalidarMs = revalidarMs;
+    }
+
+    /**
+     * Busca una sesión abierta para el RUT cuya clave coincida con la entregada.
+     * @return La sesión, o null si no hay una o la clave es distinta.
+     */
+    public SesionUpstream obtener(String rut, String password) {
+        SesionUpstream sesion = sesiones.get(rut);
+        if (sesion == null) {
+            return null;
+        }
+        if (!MessageDigest.isEqual(sesion.huellaClave, huella(sesion.sal, password))) {
+            return null;
+        }
+        // Volver a guardarla reinicia su tiempo de inactividad.
+        sesiones.put(rut, sesion);
+        rutPorSesion.put(sesion.sessionId, rut);
+        return sesion;
+    }
+
+    /**
+     * Como obtener, pero sin reiniciar el tiempo de inactividad de la sesión: para tareas en
+     * segundo plano, que no deben mantener abierta la sesión de un alumno que ya no usa la aplicación.
+     */
+    public SesionUpstream consultar(String rut, String password) {
+        SesionUpstream sesion = sesiones.getAunVencido(rut);
+        if (sesion == null || rutPorSesion.get(sesion.sessionId) == null) {
+            return null;
+        }
+        return MessageDigest.isEqual(sesion.huellaClave, huella(sesion.sal, password)) ? sesion : null;
+    }
+
+    public void registrar(String rut, String password, String sessionId, Map<String, String> cookies) {
+        byte[] sal = new byte[16];
+        RANDOM.nextBytes(sal);
+        sesiones.put(rut, new SesionUpstream(sessionId, cookies, sal, huella(sal, password)));
+        rutPorSesion.put(sessionId, rut);
+    }
+
+    /**
+     * @return El RUT dueño de la sesión, o null si la sesión no se abrió (o ya expiró) en esta instancia.
+     */
+    public String rutDeSesion(String sessionId) {
+        return rutPorSesion.get(sessionId);
+    }
+
+    public void descartar(String rut) {
+        sesiones.invalidate(rut);
+    }
+
+    /**
+     * Indica si la sesión fue comprobada hace poco y puede usarse sin volver a consultar la intranet.
+     */
+    public boolean validadaRecientemente(SesionUpstream sesion) {
+        return System.currentTimeMillis() - sesion.ultimaValidacion < revalidarMs;
+    }
+
+    public void marcarValidada(SesionUpstream sesion) {
+        sesion.ultimaValidacion = System.currentTimeMillis();
+    }
+
+    private static byte[] huella(byte[] sal, String password) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            sha.update(sal);
+            return sha.digest(password.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+}
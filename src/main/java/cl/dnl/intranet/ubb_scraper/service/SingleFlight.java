@@ -0,0 +1,89 @@
+package cl.dnl.intranet.ubb_scraper.service;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Agrupa llamadas concurrentes idénticas en una sola ejecución.
+ * Mientras una llamada con cierta clave está en curso, las demás con la misma clave esperan
+ * su resultado en lugar de repetir el trabajo. Al terminar, la clave se libera: no se guarda nada.
+ *
+ * El trabajo compartido corre aparte, sin el Plazo de quien lo inició: si no, un cliente con un
+ * plazo muy corto haría fallar a todos los que se unieron. Cada uno espera el resultado solo
+ * hasta su propio plazo; si se le acaba, recibe PlazoAgotadoException y el trabajo sigue para
+ * los demás.
+ */
+public class SingleFlight<K, V> {
+
+    @FunctionalInterface
+    public interface Llamada<V> {
+        V ejecutar() throws IOException;
+    }
+
+    private final Executor executor;
+    private final ConcurrentMap<K, CompletableFuture<V>> enCurso = new ConcurrentHashMap<>();
+
+    public SingleFlight(Executor executor) {
+        this.executor = executor;
+    }
+
+    public V ejecutar(K clave, Llamada<V> llamada) throws IOException {
+        CompletableFuture<V> nuevo = new CompletableFuture<>();
+        CompletableFuture<V> existente = enCurso.putIfAbsent(clave, nuevo);
+        if (existente == null) {
+            // Somos los primeros: lanzamos el trabajo y esperamos igual que los demás.
+            lanzar(clave, nuevo, llamada);
+            existente = nuevo;
+        }
+        return esperar(existente);
+    }
+
+    private void lanzar(K clave, CompletableFuture<V> futuro, Llamada<V> llamada) {
+        try {
+            // La clave se libera antes de completar el futuro: quien llama después de que los demás
+            // ya recibieron el resultado vuelve a ejecutar en vez de recibir ese mismo resultado.
+            executor.execute(Plazo.sinPlazo(() -> {
+                try {
+                    V valor = llamada.ejecutar();
+                    enCurso.remove(clave, futuro);
+                    futuro.complete(valor);
+                } catch (Throwable e) {
+                    // Cualquier fallo (también un Error) se comparte; si no, los que esperan quedarían bloqueados.
+                    enCurso.remove(clave, futuro);
+                    futuro.completeExceptionally(e);
+                }
+            }));
+        } catch (RejectedExecutionException e) {
+            enCurso.remove(clave, futuro);
+            futuro.completeExceptionally(e);
+        }
+    }
+
+    private V esperar(CompletableFuture<V> futuro) throws IOException {
+        try {
+            long restante = Plazo.restanteNanos();
+            if (restante == Long.MAX_VALUE) {
+                return futuro.get();
+            }
+            return futuro.get(Math.max(0, restante), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new Plazo.PlazoAgotadoException("Se agotó el plazo esperando una petición en curso.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Se interrumpió la espera de una petición en curso.", e);
+        } catch (ExecutionException e) {
+            Throwable causa = e.getCause();
+            if (causa instanceof IOException io) throw io;
+            if (causa instanceof RuntimeException re) throw re;
+            if (causa instanceof Error err) throw err;
+            throw new IOException(causa);
+        }
+    }
+}
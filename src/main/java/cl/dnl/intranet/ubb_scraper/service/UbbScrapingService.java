@@ -8,157 +8,208 @@ import cl.dnl.intranet.ubb_scraper.repository.UsuarioRepository;
 import cl.dnl.intranet.ubb_scraper.dto.AsignaturaDto;
 import cl.dnl.intranet.ubb_scraper.dto.CarreraDto;
 import cl.dnl.intranet.ubb_scraper.dto.DashboardDataDto;
+import cl.dnl.intranet.ubb_scraper.dto.DatosAlumnoDto;
 import cl.dnl.intranet.ubb_scraper.dto.PonderacionDto;
-import org.jsoup.Connection;
-import org.jsoup.Jsoup;
+import cl.dnl.intranet.ubb_scraper.parser.NotasParser;
+import cl.dnl.intranet.ubb_scraper.parser.PaginaStreamParser;
+import cl.dnl.intranet.ubb_scraper.parser.PlanPonderacion;
+import cl.dnl.intranet.ubb_scraper.parser.ResultadoNotas;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
 
 // Este código implementa la lógica de login automatizado a la intranet de la UBB, utilizando la
 // biblioteca de Jsoup.
 @Service
 public class UbbScrapingService {
 
-    // Creamos una clase interna para manejar la estructura compleja de las evaluaciones
-    private static class Evaluacion {
-        String nombre;
-        int factorTotal;
-        List<SubEvaluacion> subEvaluaciones = new ArrayList<>();
-        double notaFinal = 0.0; // La nota final de esta evaluación (puede ser un promedio de sub-evaluaciones)
-
-        Evaluacion(String nombre, int factorTotal) {
-            this.nombre = nombre;
-            this.factorTotal = factorTotal;
-        }
-
-        void calcularNotaFinal() {
-            if (subEvaluaciones.isEmpty()) {
-                // No hacer nada, la nota se asignará directamente
-            } else {
-                double sumaPonderada = 0;
-                double sumaFactores = 0;
-                for (SubEvaluacion sub : subEvaluaciones) {
-                    if (sub.nota > 0) { // Solo considerar notas válidas
-                        sumaPonderada += sub.nota * sub.factor;
-                        sumaFactores += sub.factor;
-                    }
-                }
-                if (sumaFactores > 0) {
-                    this.notaFinal = sumaPonderada / sumaFactores;
-                }
-            }
-        }
-    }
+    private static final Logger log = LoggerFactory.getLogger(UbbScrapingService.class);
 
-    private static class SubEvaluacion {
-        String nombre;
-        int factor;
-        double nota = -1.0; // -1 indica que no tiene nota aún
-
-        SubEvaluacion(String nombre, int factor) {
-            this.nombre = nombre;
-            this.factor = factor;
-        }
-    }
-
-    private static final String INTRANET_ROOT_URL = "https://intranet.ubiobio.cl/";
-    private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/138.0.0.0 Safari/537.36";
+    // Raíz de la intranet, siempre terminada en "/". Se puede apuntar a otra instancia (por
+    // ejemplo, la intranet falsa de las pruebas de carga) con app.intranet.base-url.
+    private final String intranetRootUrl;
 
     // --- INICIO DE LA MODIFICACIÓN ---
     private final UsuarioRepository usuarioRepository;
     private final EncryptionService encryptionService;
+    // Todas las peticiones a la intranet pasan por este cliente; Jsoup solo parsea.
+    private final IntranetHttpClient intranetClient;
+    // Reintentos y cobertura (hedging) de las peticiones, acotados por el Plazo de la petición.
+    private final HedgedFetcher hedgedFetcher;
+    // Sesiones ya autenticadas por RUT, para no repetir el login completo.
+    private final SesionUpstreamPool sesionPool;
+
+    // Ejecutor y límites para consultar las notas de varias asignaturas en paralelo.
+    private final ExecutorService scrapingExecutor;
+    private final int maxConcurrenciaNotas;
+    private final long timeoutNotasMs;
+
+    // Datos ya parseados de la página inicial de asignaturas, por sessionId.
+    private final LruTtlCache<String, DatosAlumnoDto> datosAlumnoCache;
+
+    // Sesiones abiertas aparte (el barrido de notas y el historial). No se registran en el
+    // pool ni en datosAlumnoCache, para que un barrido de miles de alumnos no desplace las sesiones
+    // y los datos de quienes están usando la aplicación; sus datos van a una caché pequeña aparte.
+    // Cerrar una sesión no la quita de aquí: la marca vence sola, así una consulta compartida que
+    // siga en curso tras cerrarla tampoco termina en las cachés de los alumnos.
+    private final LruTtlCache<String, Boolean> sesionesSegundoPlano = new LruTtlCache<>(1024, 3_600_000);
+    private final LruTtlCache<String, DatosAlumnoDto> datosSegundoPlano;
+
+    // Planes de ponderación de los ramos normales por sección (agn_codigo|seccion|ano|periodo),
+    // compartidos entre todos los alumnos. Cada plan lleva la huella de su tabla: si la página trae
+    // otra (el profesor cambió las evaluaciones o los factores), se vuelve a armar y se reemplaza.
+    private final LruTtlCache<String, PlanPonderacion> planesPonderacion;
+
+    // Último resultado de cada página de notas por RUT y asignatura (con su sección y periodo),
+    // junto con el SHA-256 de los bytes de la página y la huella del plan de ponderación con que se
+    // calculó (0 en los modulares). Si la página llega idéntica y el plan de la sección sigue siendo
+    // ese, se devuelve el resultado guardado sin armar el DOM ni recalcular nada.
+    private record NotasVistas(byte[] huella, long huellaPlan, ResultadoNotas resultado) {}
+    private final LruTtlCache<String, NotasVistas> notasVistas;
+
+    // El periodo académico es el mismo para todos los alumnos y cambia pocas veces al año, así que
+    // se guarda a nivel de proceso. Una tarea programada lo refresca usando la última sesión vista.
+    private final AtomicReference<String> periodoActual = new AtomicReference<>();
+    private final AtomicReference<String> ultimaSesion = new AtomicReference<>();
+
+    // Métricas: tiempo de parseo de las páginas de notas ya descargadas (scraping.parseo), tiempo de
+    // lectura de las páginas en streaming (scraping.lectura: descarga y parseo van juntos y no se
+    // pueden separar), cuántas páginas de notas se piden por carrera (scraping.notas.fanout) y
+    // aciertos de la caché del periodo.
+    private final MeterRegistry meterRegistry;
+    private final DistributionSummary fanoutNotas;
+    private final Counter periodoAciertos;
+    private final Counter periodoFallos;
+    private final Counter notasSinCambios;
+
+    // Año y periodo académico, como los usa la intranet (ej. "2025" y "1").
+    public record PeriodoAcademico(String anio, String periodo) {}
+
+    /**
+     * Asignaturas de una carrera en un periodo.
+     * @param completas false si alguna asignatura falló o no alcanzó a calcularse (quedó con promedio 0).
+     */
+    public record AsignaturasPeriodo(List<AsignaturaDto> asignaturas, boolean completas) {}
 
     // Modificamos el constructor para que Spring inyecte los nuevos componentes
-    public UbbScrapingService(UsuarioRepository usuarioRepository, EncryptionService encryptionService) {
+    public UbbScrapingService(UsuarioRepository usuarioRepository,
+                              EncryptionService encryptionService,
+                              IntranetHttpClient intranetClient,
+                              HedgedFetcher hedgedFetcher,
+                              SesionUpstreamPool sesionPool,
+                              ExecutorService scrapingExecutor,
+                              MeterRegistry meterRegistry,
+                              @Value("${app.scraping.notas.max-concurrencia:4}") int maxConcurrenciaNotas,
+                              @Value("${app.scraping.notas.timeout-total-ms:15000}") long timeoutNotasMs,
+                              @Value("${app.cache.datos-alumno.max-entradas:1000}") int maxDatosAlumno,
+                              @Value("${app.cache.datos-alumno.ttl-ms:120000}") long ttlDatosAlumnoMs,
+                              @Value("${app.cache.planes-ponderacion.max-entradas:5000}") int maxPlanes,
+                              @Value("${app.cache.planes-ponderacion.ttl-ms:21600000}") long ttlPlanesMs,
+                              @Value("${app.cache.paginas-notas.max-entradas:20000}") int maxPaginasNotas,
+                              @Value("${app.cache.paginas-notas.ttl-ms:86400000}") long ttlPaginasNotasMs,
+                              @Value("${app.intranet.base-url:https://intranet.ubiobio.cl/}") String intranetRootUrl) {
         this.usuarioRepository = usuarioRepository;
         this.encryptionService = encryptionService;
+        this.intranetClient = intranetClient;
+        this.hedgedFetcher = hedgedFetcher;
+        this.sesionPool = sesionPool;
+        this.scrapingExecutor = scrapingExecutor;
+        this.maxConcurrenciaNotas = maxConcurrenciaNotas;
+        this.timeoutNotasMs = timeoutNotasMs;
+        this.datosAlumnoCache = new LruTtlCache<String, DatosAlumnoDto>(maxDatosAlumno, ttlDatosAlumnoMs)
+                .registrarMetricas(meterRegistry, "datos-alumno");
+        this.datosSegundoPlano = new LruTtlCache<>(64, ttlDatosAlumnoMs);
+        this.planesPonderacion = new LruTtlCache<String, PlanPonderacion>(maxPlanes, ttlPlanesMs)
+                .registrarMetricas(meterRegistry, "planes-ponderacion");
+        this.notasVistas = new LruTtlCache<String, NotasVistas>(maxPaginasNotas, ttlPaginasNotasMs)
+                .registrarMetricas(meterRegistry, "paginas-notas");
+        this.meterRegistry = meterRegistry;
+        this.fanoutNotas = DistributionSummary.builder("scraping.notas.fanout")
+                .description("Páginas de notas pedidas en paralelo por cada carrera consultada")
+                .register(meterRegistry);
+        this.periodoAciertos = Counter.builder("cache.gets").tag("cache", "periodo").tag("result", "hit")
+                .register(meterRegistry);
+        this.periodoFallos = Counter.builder("cache.gets").tag("cache", "periodo").tag("result", "miss")
+                .register(meterRegistry);
+        this.notasSinCambios = Counter.builder("scraping.notas.sin-cambios")
+                .description("Páginas de notas idénticas a la anterior, que no se volvieron a parsear")
+                .register(meterRegistry);
+        this.intranetRootUrl = intranetRootUrl.endsWith("/") ? intranetRootUrl : intranetRootUrl + "/";
     }
     // --- FIN DE LA MODIFICACIÓN ---
 
     // Metodo principal que intenta iniciar sesión con un RUT y una contraseña, devolviendo un mapa con
     // el resultado del intento.
     public Map<String, Object> performLogin(String rutCompleto, String password) throws IOException {
-        // 1. Autenticar contra la UBB (esta parte no cambia)
-        Connection session = Jsoup.newSession().userAgent(USER_AGENT);
-        session.url(INTRANET_ROOT_URL).method(Connection.Method.GET).execute();
-        Connection.Response responseWithSessionId = session.url(INTRANET_ROOT_URL + "intranet/")
-                .method(Connection.Method.GET)
-                .followRedirects(false)
-                .execute();
-
-        if (responseWithSessionId.statusCode() != 302) {
-            throw new IOException("No se recibió la segunda redirección esperada.");
-        }
-        String locationHeader = responseWithSessionId.header("Location");
-        if (locationHeader == null || locationHeader.isEmpty()) {
-            throw new IOException("La URL de redirección final está vacía.");
+        // 0. Si ya hay una sesión abierta para este RUT con la misma clave, la reutilizamos.
+        //    La clave coincide con la que guardamos en la BD, así que tampoco hace falta tocarla.
+        SesionUpstreamPool.SesionUpstream sesionExistente = sesionPool.obtener(rutCompleto, password);
+        if (sesionExistente != null && sesionSigueValida(sesionExistente)) {
+            return Map.of(
+                    "success", true,
+                    "sessionId", sesionExistente.getSessionId()
+            );
         }
-        URL fullRedirectUrl = new URL(new URL(INTRANET_ROOT_URL), locationHeader);
-        String path = fullRedirectUrl.getPath();
-        String sessionId = path.substring(1).split("/")[0];
-        String loginUrl = INTRANET_ROOT_URL + sessionId + "/intranet/inicio.php";
-        String refererUrl = INTRANET_ROOT_URL + sessionId + "/intranet/";
-        String[] rutParts = rutCompleto.replace(".", "").split("-");
-        String rut = rutParts[0];
-        String dv = rutParts[1];
 
-        Connection.Response loginResponse = session.url(loginUrl)
-                .method(Connection.Method.POST)
-                .header("Origin", INTRANET_ROOT_URL.substring(0, INTRANET_ROOT_URL.length() - 1))
-                .header("Referer", refererUrl)
-                .header("Content-Type", "application/x-www-form-urlencoded")
-                .data("rut", rut, "dv", dv, "rut_cambio", "", "rut_aux", rutCompleto, "clave", password)
-                .followRedirects(true) // ¡Cambiamos a true para obtener la página final!
-                .execute();
-
-        // 2. Verificar si el login en la UBB fue exitoso
-        String urlAfterLogin = loginResponse.url().toString();
-        if (!urlAfterLogin.contains("inicio.php")) {
+        // 1. Autenticar contra la UBB. Las cookies de este login se guardan en un mapa propio.
+        Map<String, String> cookies = new HashMap<>();
+        String sessionId = autenticar(rutCompleto, password, cookies);
+        if (sessionId == null) {
             // Si no llegamos a la página de inicio, el login falló.
             return Map.of("success", false);
         }
 
+        sesionPool.registrar(rutCompleto, password, sessionId, cookies);
+
         // --- INICIO DE LA NUEVA LÓGICA DE BASE DE DATOS ---
 
         // 3. Si el login fue exitoso, gestionamos el usuario en nuestra BD
         Optional<Usuario> usuarioExistente = usuarioRepository.findByRut(rutCompleto);
 
-        String passwordEncriptada = encryptionService.encrypt(password);
-
         if (usuarioExistente.isPresent()) {
-            // El usuario ya existe, actualizamos su contraseña si ha cambiado.
+            // El usuario ya existe, actualizamos su contraseña solo si ha cambiado. Comparamos la
+            // huella determinista: el texto encriptado cambia en cada encrypt() por el IV aleatorio.
+            // Los registros sin huella (anteriores a la columna) se actualizan una sola vez.
             Usuario usuario = usuarioExistente.get();
-            if (!usuario.getPasswordEncriptada().equals(passwordEncriptada)) {
-                usuario.setPasswordEncriptada(passwordEncriptada);
+            if (!encryptionService.coincideHuella(password, usuario.getPasswordHuella())) {
+                usuario.setPasswordEncriptada(encryptionService.encrypt(password));
+                usuario.setPasswordHuella(encryptionService.huella(password));
                 usuarioRepository.save(usuario);
-                System.out.println("Contraseña actualizada para el usuario: " + rutCompleto);
+                log.info("Contraseña actualizada para el usuario {}", rutCompleto);
             }
         } else {
             // El usuario es nuevo, lo creamos.
-            // Necesitamos scrapear su nombre de la página de inicio.
-            // 1. Obtenemos la página inicial de asignaturas, que contiene toda la info.
-            Document doc = getInitialAsignaturasPage(sessionId);
-
-            // 2. Extraemos el nombre y apellido del usuario.
-            // Buscamos la etiqueta <label> que está justo después de la que contiene "Nombres"
-            String nombres = doc.select("label.blue:contains(Nombres) + label").text().trim();
-            String apellidos = doc.select("label.blue:contains(Apellidos) + label").text().trim();
-            String nombreUsuario = nombres + " " + apellidos;
+            // Necesitamos scrapear su nombre de la página de inicio. Los datos quedan en caché,
+            // así que la carga del dashboard que viene a continuación no vuelve a pedir la página.
+            DatosAlumnoDto datos = getDatosAlumno(sessionId);
+            String nombreUsuario = datos.nombres() + " " + datos.apellidos();
 
             if (nombreUsuario.equals(" ")) {
                 nombreUsuario = "Usuario Desconocido"; // Valor por defecto
             }
 
-            Usuario nuevoUsuario = new Usuario(rutCompleto, nombreUsuario, passwordEncriptada);
+            Usuario nuevoUsuario = new Usuario(rutCompleto, nombreUsuario,
+                    encryptionService.encrypt(password), encryptionService.huella(password));
             usuarioRepository.save(nuevoUsuario);
-            System.out.println("Nuevo usuario creado: " + rutCompleto);
+            log.info("Nuevo usuario creado: {}", rutCompleto);
         }
 
         // --- FIN DE LA NUEVA LÓGICA DE BASE DE DATOS ---
@@ -170,6 +221,120 @@ public class UbbScrapingService {
         );
     }
 
+    // Hace el login completo en la intranet (tres peticiones) y guarda las cookies en el mapa dado.
+    // Devuelve el sessionId, o null si la intranet rechazó las credenciales.
+    private String autenticar(String rutCompleto, String password, Map<String, String> cookies) throws IOException {
+        intranetClient.enviar("GET", intranetRootUrl, null, Map.of(), cookies, true);
+        RespuestaIntranet responseWithSessionId = intranetClient.enviar("GET", intranetRootUrl + "intranet/",
+                null, Map.of(), cookies, false);
+
+        if (responseWithSessionId.status() != 302) {
+            throw new IOException("No se recibió la segunda redirección esperada.");
+        }
+        String locationHeader = responseWithSessionId.header("Location");
+        if (locationHeader == null || locationHeader.isEmpty()) {
+            throw new IOException("La URL de redirección final está vacía.");
+        }
+        URL fullRedirectUrl = new URL(new URL(intranetRootUrl), locationHeader);
+        String path = fullRedirectUrl.getPath();
+        String sessionId = path.substring(1).split("/")[0];
+        String loginUrl = intranetRootUrl + sessionId + "/intranet/inicio.php";
+        String refererUrl = intranetRootUrl + sessionId + "/intranet/";
+        String[] rutParts = rutCompleto.replace(".", "").split("-");
+        String rut = rutParts[0];
+        String dv = rutParts[1];
+
+        Map<String, String> formularioLogin = new LinkedHashMap<>();
+        formularioLogin.put("rut", rut);
+        formularioLogin.put("dv", dv);
+        formularioLogin.put("rut_cambio", "");
+        formularioLogin.put("rut_aux", rutCompleto);
+        formularioLogin.put("clave", password);
+
+        RespuestaIntranet loginResponse = intranetClient.enviar("POST", loginUrl, formularioLogin,
+                Map.of("Origin", intranetRootUrl.substring(0, intranetRootUrl.length() - 1),
+                       "Referer", refererUrl),
+                cookies,
+                true); // ¡Seguimos las redirecciones para obtener la página final!
+
+        // 2. Verificar si el login en la UBB fue exitoso
+        String urlAfterLogin = loginResponse.url().toString();
+        return urlAfterLogin.contains("inicio.php") ? sessionId : null;
+    }
+
+    /**
+     * Abre una sesión para una tarea en segundo plano (el barrido de notas). Si el alumno tiene una
+     * sesión abierta en el pool se reutiliza, sin renovarla; si no, se inicia sesión sin registrarla
+     * en el pool ni en la BD. Al terminar hay que llamar a cerrarSesionSegundoPlano.
+     * @return El sessionId, o null si la intranet rechazó la clave.
+     */
+    public String abrirSesionSegundoPlano(String rutCompleto, String password) throws IOException {
+        SesionUpstreamPool.SesionUpstream viva = sesionPool.consultar(rutCompleto, password);
+        if (viva != null && sesionSigueValida(viva)) {
+            return viva.getSessionId();
+        }
+        String sessionId = autenticar(rutCompleto, password, new HashMap<>());
+        if (sessionId != null) {
+            sesionesSegundoPlano.put(sessionId, true);
+        }
+        return sessionId;
+    }
+
+    /**
+     * Abre una sesión nueva para el alumno con la clave guardada en la BD, para consultas que dejan
+     * seleccionado otro año o periodo en la sesión (el historial) sin tocar la sesión con que el
+     * alumno navega. Igual que las del barrido, no pasa por el pool; se cierra con
+     * cerrarSesionSegundoPlano.
+     * @return El sessionId, o null si el alumno no tiene clave guardada o la intranet la rechazó.
+     */
+    public String abrirSesionAparte(String rutCompleto) throws IOException {
+        Optional<Usuario> usuario = usuarioRepository.findByRut(rutCompleto);
+        if (usuario.isEmpty()) {
+            return null;
+        }
+        String password = encryptionService.decrypt(usuario.get().getPasswordEncriptada());
+        String sessionId = autenticar(rutCompleto, password, new HashMap<>());
+        if (sessionId != null) {
+            sesionesSegundoPlano.put(sessionId, true);
+        }
+        return sessionId;
+    }
+
+    /** Olvida los datos de una sesión abierta con abrirSesionSegundoPlano o abrirSesionAparte. */
+    public void cerrarSesionSegundoPlano(String sessionId) {
+        if (esSegundoPlano(sessionId)) {
+            datosSegundoPlano.invalidate(sessionId);
+        }
+    }
+
+    private LruTtlCache<String, DatosAlumnoDto> cacheDatos(String sessionId) {
+        return esSegundoPlano(sessionId) ? datosSegundoPlano : datosAlumnoCache;
+    }
+
+    private boolean esSegundoPlano(String sessionId) {
+        return sesionesSegundoPlano.get(sessionId) != null;
+    }
+
+    // Comprueba si una sesión guardada sigue abierta en la intranet. Si se validó hace poco no se
+    // consulta nada; si no, basta con pedir la página de inicio sin seguir redirecciones: una sesión
+    // expirada responde con una redirección al login.
+    private boolean sesionSigueValida(SesionUpstreamPool.SesionUpstream sesion) {
+        if (sesionPool.validadaRecientemente(sesion)) {
+            return true;
+        }
+        try {
+            String inicioUrl = intranetRootUrl + sesion.getSessionId() + "/intranet/inicio.php";
+            RespuestaIntranet respuesta = intranetClient.enviar("GET", inicioUrl, null, Map.of(), sesion.getCookies(), false);
+            if (respuesta.status() == 200) {
+                sesionPool.marcarValidada(sesion);
+                return true;
+            }
+        } catch (IOException e) {
+            log.warn("No se pudo validar la sesión guardada: {}", e.getMessage());
+        }
+        return false;
+    }
+
     // Metodo que toma el sessionId obtenido y realiza una petición GET para obtener un HTML con la
     // lista de ramos.
     public String getAsignaturasHtml(String sessionId) throws IOException {
@@ -177,192 +342,400 @@ public class UbbScrapingService {
         long timestamp = System.currentTimeMillis();
 
         // 2. Construimos la URL completa y correcta
-        String asignaturasUrl = INTRANET_ROOT_URL + sessionId + "/calificaciones/ver_calif_show.php?_=" + timestamp;
-        System.out.println("DEBUG: Obteniendo asignaturas desde: " + asignaturasUrl);
+        String asignaturasUrl = intranetRootUrl + sessionId + "/calificaciones/ver_calif_show.php?_=" + timestamp;
+        log.debug("Obteniendo asignaturas desde {}", asignaturasUrl);
 
-        // 3. Hacemos la petición GET. No necesitamos una sesión nueva, podemos usar Jsoup directamente.
-        //    Es importante enviar el User-Agent para parecer un navegador.
-        Connection.Response response = Jsoup.connect(asignaturasUrl)
-                .userAgent(USER_AGENT)
-                .method(Connection.Method.GET)
-                .execute();
+        // 3. Hacemos la petición GET. No necesitamos una sesión nueva: el cliente compartido ya
+        //    envía el User-Agent para parecer un navegador.
+        RespuestaIntranet response = intranetClient.enviar("GET", asignaturasUrl, null, Map.of(), null, true);
 
         // 4. Verificamos que la petición fue exitosa
-        if (response.statusCode() == 200) {
+        if (response.status() == 200) {
             // Devolvemos el cuerpo de la respuesta, que es el HTML con la tabla de asignaturas
-            return response.body();
+            return response.texto();
         } else {
-            throw new IOException("No se pudo obtener la lista de asignaturas. Código de estado: " + response.statusCode());
+            throw new IOException("No se pudo obtener la lista de asignaturas. Código de estado: " + response.status());
         }
     }
 
     // METODO 1: Obtener la lista de carreras (AHORA CON LA LÓGICA CORRECTA)
     public List<CarreraDto> getAvailableCareers(String sessionId) throws IOException {
-        Document doc = getInitialAsignaturasPage(sessionId);
-
-        // Usamos el selector CSS que descubriste
-        return doc.select("select[name=cambio_carrera] option").stream()
-                .map(option -> {
-                    String nombre = option.text();
-                    String valorCompleto = option.val();
-                    String[] partes = valorCompleto.split("-");
-
-                    // Creamos el DTO con todos los datos desglosados
-                    return new CarreraDto(
-                            nombre,
-                            valorCompleto,
-                            partes[0], // crr_codigo
-                            partes[1], // pca_codigo
-                            partes[2], // alc_ano_ingreso
-                            partes[3]  // alc_periodo
-                    );
-                })
-                .collect(Collectors.toList());
+        return getDatosAlumno(sessionId).carreras();
     }
 
     // METODO 2: Obtener las asignaturas para una carrera específica (AHORA CON EL PAYLOAD CORRECTO)
 // Necesitamos pasar el DTO completo para tener todos los datos.
     public String getAsignaturasForCareer(String sessionId, CarreraDto carrera) throws IOException {
-        Document doc = getInitialAsignaturasPage(sessionId);
+        return getAsignaturasForCareer(sessionId, carrera, getDatosAlumno(sessionId).anio(), obtenerPeriodoActual(sessionId));
+    }
+
+    /**
+     * Igual que getAsignaturasForCareer(sessionId, carrera), pero para un año y periodo dados
+     * (por ejemplo, uno ya cursado).
+     */
+    public String getAsignaturasForCareer(String sessionId, CarreraDto carrera, String anio, String periodo) throws IOException {
+        DatosAlumnoDto datos = getDatosAlumno(sessionId);
+        String postUrl = intranetRootUrl + sessionId + "/calificaciones/ver_calif_show.php";
 
-        String postUrl = INTRANET_ROOT_URL + sessionId + "/calificaciones/ver_calif_show.php";
+        RespuestaIntranet response = intranetClient.post(postUrl, formularioCarrera(datos, carrera, anio, periodo));
+        alCambiarCarrera(sessionId, datos, carrera, anio);
+        return response.texto();
+    }
 
+    /**
+     * Igual que getAsignaturasForCareer, pero extrae en streaming solo las tablas de asignaturas y
+     * los campos ocultos, sin armar el DOM completo de la página.
+     */
+    private PaginaStreamParser.PaginaCarrera getPaginaCarrera(String sessionId, CarreraDto carrera,
+                                                              String anio, String periodo) throws IOException {
+        DatosAlumnoDto datos = getDatosAlumno(sessionId);
+        String postUrl = intranetRootUrl + sessionId + "/calificaciones/ver_calif_show.php";
+
+        PaginaStreamParser.PaginaCarrera pagina;
+        Map<String, String> formulario = formularioCarrera(datos, carrera, anio, periodo);
+        try (RespuestaStream response = hedgedFetcher.conReintentos("paginas",
+                () -> intranetClient.abrir("POST", postUrl, formulario))) {
+            Timer.Sample lectura = Timer.start(meterRegistry);
+            pagina = PaginaStreamParser.paginaCarrera(response.reader(), response.url().toString());
+            lectura.stop(timerLectura("carrera"));
+        }
+        alCambiarCarrera(sessionId, datos, carrera, anio);
+        return pagina;
+    }
+
+    // Payload del POST que selecciona una carrera (y el año y periodo a mostrar) en ver_calif_show.php.
+    private Map<String, String> formularioCarrera(DatosAlumnoDto datos, CarreraDto carrera, String anio, String periodo) {
         // Extraemos los datos que son comunes a todas las peticiones
-        String aluRut = doc.select("input[name=alu_rut]").val();
-        String anio = doc.select("input[name=anio]").val();
-        String periodo = obtenerPeriodoActual(sessionId);
-
-        // Hacemos la petición POST con el payload que descifraste
-        Connection.Response response = Jsoup.connect(postUrl)
-                .userAgent(USER_AGENT)
-                .method(Connection.Method.POST)
-                .data("volver", "volver")
-                .data("url_volver", "")
-                .data("alu_rut", aluRut)
-                .data("crr_codigo", carrera.crrCodigo()) // Usamos los datos del DTO
-                .data("pca_codigo", carrera.pcaCodigo())
-                .data("alc_ano_ingreso", carrera.alcAnoIngreso())
-                .data("alc_periodo", carrera.alcPeriodo())
-                .data("anio", anio)
-                .data("periodo", periodo)
-                .data("cambio_carrera", carrera.valorCompleto()) // El valor completo del option
-                .execute();
-
-        return response.body();
-    }
-
-    // --- INICIO DEL CÓDIGO QUE FALTABA ---
+        String aluRut = datos.aluRut();
+
+        Map<String, String> formulario = new LinkedHashMap<>();
+        formulario.put("volver", "volver");
+        formulario.put("url_volver", "");
+        formulario.put("alu_rut", aluRut);
+        formulario.put("crr_codigo", carrera.crrCodigo()); // Usamos los datos del DTO
+        formulario.put("pca_codigo", carrera.pcaCodigo());
+        formulario.put("alc_ano_ingreso", carrera.alcAnoIngreso());
+        formulario.put("alc_periodo", carrera.alcPeriodo());
+        formulario.put("anio", anio);
+        formulario.put("periodo", periodo);
+        formulario.put("cambio_carrera", carrera.valorCompleto()); // El valor completo del option
+        return formulario;
+    }
 
     /**
-     * Metodo ayudante para obtener el documento HTML de la página de asignaturas.
-     * Lo hacemos privado porque solo será usado por otros métodos dentro de esta clase.
+     * Vuelve a dejar seleccionados en la sesión la carrera activa y el año de los datos dados, con el
+     * periodo indicado, después de haber consultado otros periodos en ella. Los datos guardados de
+     * la página inicial se descartan para que la próxima lectura refleje lo seleccionado.
+     */
+    public void restablecerPeriodo(String sessionId, DatosAlumnoDto datos, String periodo) throws IOException {
+        for (CarreraDto carrera : datos.carreras()) {
+            if (carrera.valorCompleto().equals(datos.carreraActiva())) {
+                String postUrl = intranetRootUrl + sessionId + "/calificaciones/ver_calif_show.php";
+                intranetClient.post(postUrl, formularioCarrera(datos, carrera, datos.anio(), periodo));
+                break;
+            }
+        }
+        cacheDatos(sessionId).invalidate(sessionId);
+    }
+
+    // Al cambiar de carrera o de año la intranet deja seleccionado el nuevo en la sesión, así que
+    // los datos guardados de la página inicial ya no corresponden.
+    private void alCambiarCarrera(String sessionId, DatosAlumnoDto datos, CarreraDto carrera, String anio) {
+        if (!carrera.valorCompleto().equals(datos.carreraActiva()) || !anio.equals(datos.anio())) {
+            cacheDatos(sessionId).invalidate(sessionId);
+        }
+    }
+
+    /**
+     * Devuelve los campos de la página inicial de asignaturas que usan los demás métodos,
+     * leyéndolos de la caché de la sesión si están disponibles. La página se lee en streaming y
+     * se deja de descargar en cuanto aparecen todos los campos.
      * @param sessionId El ID de sesión válido.
-     * @return El documento HTML parseado por Jsoup.
+     * @return Los datos del alumno y sus carreras.
      * @throws IOException Si la petición falla.
      */
-    private Document getInitialAsignaturasPage(String sessionId) throws IOException {
-        long timestamp = System.currentTimeMillis();
-        String asignaturasUrl = INTRANET_ROOT_URL + sessionId + "/calificaciones/ver_calif_show.php?_=" + timestamp;
+    public DatosAlumnoDto getDatosAlumno(String sessionId) throws IOException {
+        DatosAlumnoDto datos = cacheDatos(sessionId).get(sessionId);
+        if (datos != null) {
+            return datos;
+        }
 
-        return Jsoup.connect(asignaturasUrl)
-                .userAgent(USER_AGENT)
-                .get();
+        long timestamp = System.currentTimeMillis();
+        String asignaturasUrl = intranetRootUrl + sessionId + "/calificaciones/ver_calif_show.php?_=" + timestamp;
+        try (RespuestaStream response = hedgedFetcher.conReintentos("paginas",
+                () -> intranetClient.abrir("GET", asignaturasUrl, null))) {
+            Timer.Sample lectura = Timer.start(meterRegistry);
+            datos = PaginaStreamParser.datosAlumno(response.reader(), response.url().toString());
+            lectura.stop(timerLectura("datos-alumno"));
+        } catch (IntranetNoDisponibleException | Plazo.PlazoAgotadoException e) {
+            // Con la intranet caída, saturada o sin responder a tiempo, los últimos datos conocidos valen más que un error.
+            DatosAlumnoDto anteriores = cacheDatos(sessionId).getAunVencido(sessionId);
+            if (anteriores != null) {
+                log.debug("Intranet no disponible; se usan los datos guardados del alumno.");
+                return anteriores;
+            }
+            throw e;
+        }
+        cacheDatos(sessionId).put(sessionId, datos);
+        return datos;
     }
 
-    // --- FIN DEL CÓDIGO QUE FALTABA ---
-
     public DashboardDataDto getDashboardData(String sessionId) throws IOException {
-        // 1. Obtenemos la página inicial de asignaturas, que contiene toda la info.
-        Document doc = getInitialAsignaturasPage(sessionId);
-
-        // 2. Extraemos el nombre y apellido del usuario.
-        // Buscamos la etiqueta <label> que está justo después de la que contiene "Nombres"
-        String nombres = doc.select("label.blue:contains(Nombres) + label").text().trim();
-        String apellidos = doc.select("label.blue:contains(Apellidos) + label").text().trim();
-        String nombreCompleto = nombres + " " + apellidos;
-
-        // 3. Extraemos la lista de carreras (reutilizamos la lógica que ya teníamos).
-        List<CarreraDto> carreras = doc.select("select[name=cambio_carrera] option").stream()
-                .map(option -> {
-                    String nombre = option.text();
-                    String valorCompleto = option.val();
-                    String[] partes = valorCompleto.split("-");
-                    return new CarreraDto(nombre, valorCompleto, partes[0], partes[1], partes[2], partes[3]);
-                })
-                .collect(Collectors.toList());
-
-        // 4. Devolvemos everything empaquetado en nuestro nuevo DTO.
-        return new DashboardDataDto(nombreCompleto, carreras);
-    }
-
-    // METODO PRINCIPAL MODIFICADO: Ahora calcula el promedio para cada asignatura
+        // 1. Obtenemos los datos de la página inicial de asignaturas, que contiene toda la info.
+        DatosAlumnoDto datos = getDatosAlumno(sessionId);
+
+        // 2. Armamos el nombre completo del usuario.
+        String nombreCompleto = datos.nombres() + " " + datos.apellidos();
+
+        // 3. Devolvemos everything empaquetado en nuestro nuevo DTO.
+        return new DashboardDataDto(nombreCompleto, datos.carreras());
+    }
+
+    // METODO PRINCIPAL MODIFICADO: Ahora calcula el promedio para cada asignatura.
+    // Las notas de cada asignatura se piden en paralelo (con un máximo de peticiones simultáneas
+    // y un tiempo total límite), pero el resultado mantiene el orden de la tabla.
     public List<AsignaturaDto> getParsedAsignaturas(String sessionId, CarreraDto carrera) throws IOException {
-        String html = getAsignaturasForCareer(sessionId, carrera);
-        Document doc = Jsoup.parse(html);
-        Elements rows = doc.select("table.table.table-hover tbody tr");
+        return getParsedAsignaturas(sessionId, carrera, (indice, asignatura) -> {});
+    }
 
-        List<AsignaturaDto> asignaturasConPromedio = new java.util.ArrayList<>();
+    /**
+     * Igual que getParsedAsignaturas(sessionId, carrera), pero avisa cada asignatura apenas se
+     * calcula su promedio, sin esperar a las demás.
+     * @param alCalcular Recibe la posición de la asignatura en el resultado y la asignatura. Se llama
+     *                   una vez por asignatura (salvo que se lance una excepción antes), en el
+     *                   orden en que terminan y desde distintos hilos, así que debe ser segura
+     *                   para uso concurrente.
+     */
+    public List<AsignaturaDto> getParsedAsignaturas(String sessionId, CarreraDto carrera,
+                                                    BiConsumer<Integer, AsignaturaDto> alCalcular) throws IOException {
+        return consultarAsignaturas(sessionId, carrera, getDatosAlumno(sessionId).anio(),
+                obtenerPeriodoActual(sessionId), alCalcular).asignaturas();
+    }
 
-        // El contador ahora es simplemente el índice del bucle
-        for (int i = 0; i < rows.size(); i++) {
-            Element row = rows.get(i);
-            String nombreAsignatura = row.select("td:first-child").text();
-            if (nombreAsignatura.isEmpty()) continue;
+    /**
+     * Asignaturas con promedio de una carrera en un año y periodo dados (por ejemplo, uno ya
+     * cursado), en el orden de la tabla.
+     */
+    public AsignaturasPeriodo getAsignaturasPeriodo(String sessionId, CarreraDto carrera, String anio, String periodo) throws IOException {
+        return consultarAsignaturas(sessionId, carrera, anio, periodo, (indice, asignatura) -> {});
+    }
 
-            Element califButton = row.select("span[title='Ver Calificaciones']").first();
-            if (califButton == null) {
-                asignaturasConPromedio.add(new AsignaturaDto(nombreAsignatura, 0.0));
+    private AsignaturasPeriodo consultarAsignaturas(String sessionId, CarreraDto carrera, String anio, String periodo,
+                                                    BiConsumer<Integer, AsignaturaDto> alCalcular) throws IOException {
+        // La página se parsea antes de repartir el trabajo entre hilos; las tareas solo reciben
+        // los valores ya extraídos.
+        PaginaStreamParser.PaginaCarrera pagina = getPaginaCarrera(sessionId, carrera, anio, periodo);
+        Map<String, String> datosFormulario = pagina.datosFormulario();
+
+        List<String> nombres = new ArrayList<>();
+        List<String> onClicks = new ArrayList<>();
+        List<Integer> detIndices = new ArrayList<>();
+        for (PaginaStreamParser.FilaAsignatura fila : pagina.filas()) {
+            nombres.add(fila.nombre());
+            onClicks.add(fila.onClick());
+            detIndices.add(fila.det());
+        }
+
+        fanoutNotas.record(onClicks.stream().filter(Objects::nonNull).count());
+
+        // Si alguna asignatura falló o no alcanzó a calcularse, el resultado queda marcado como incompleto.
+        AtomicBoolean completas = new AtomicBoolean(true);
+        // Si la intranet rechaza una asignatura por estar caída o saturada, o se agota el plazo, las
+        // demás correrían la misma suerte: se cancela todo y se lanza ese error, para que quien
+        // llama use el último snapshot en vez de promedios en 0.
+        AtomicReference<IOException> rechazo = new AtomicReference<>();
+
+        // Cada posición se publica una sola vez: la primera que llegue (el cálculo o el fin del plazo).
+        AtomicReferenceArray<AsignaturaDto> resultados = new AtomicReferenceArray<>(nombres.size());
+        BiConsumer<Integer, AsignaturaDto> publicar = (indice, asignatura) -> {
+            if (resultados.compareAndSet(indice, null, asignatura)) {
+                alCalcular.accept(indice, asignatura);
+            }
+        };
+
+        // El semáforo es por llamada: limita cuántas peticiones hace este alumno a la vez.
+        Semaphore permisos = new Semaphore(maxConcurrenciaNotas);
+        List<Future<?>> tareas = new ArrayList<>();
+        for (int i = 0; i < nombres.size(); i++) {
+            String nombreAsignatura = nombres.get(i);
+            String onClickAttr = onClicks.get(i);
+            if (onClickAttr == null) {
+                publicar.accept(i, new AsignaturaDto(nombreAsignatura, 0.0));
                 continue;
             }
 
-            String onClickAttr = califButton.attr("onClick");
-
-            try {
-                // --- INICIO DE LA CORRECCIÓN ---
-                // Pasamos el índice del bucle 'i' directamente como el valor de 'det'.
-                double promedio = getAsignaturaPromedio(sessionId, onClickAttr, doc, i);
-                // --- FIN DE LA CORRECCIÓN ---
+            int indice = i;
+            int detIndex = detIndices.get(i);
+            tareas.add(scrapingExecutor.submit(() -> {
+                ResultadoNotas resultado = ResultadoNotas.VACIO;
+                try {
+                    permisos.acquire();
+                    try {
+                        resultado = getAsignaturaPromedio(sessionId, onClickAttr, datosFormulario, detIndex);
+                    } finally {
+                        permisos.release();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (IntranetNoDisponibleException | Plazo.PlazoAgotadoException e) {
+                    rechazo.compareAndSet(null, e);
+                    return;
+                } catch (Exception e) {
+                    completas.set(false);
+                    log.warn("Error calculando promedio para {}: {}", nombreAsignatura, e.getMessage());
+                }
+                publicar.accept(indice, new AsignaturaDto(nombreAsignatura, resultado.promedio(), resultado.calificaciones()));
+            }));
+        }
 
-                asignaturasConPromedio.add(new AsignaturaDto(nombreAsignatura, promedio));
+        // Esperamos como máximo el plazo total (o lo que quede del Plazo de la petición, si es
+        // menos); lo que no termine a tiempo se cancela.
+        long limite = System.nanoTime() + Plazo.acotarNanos(TimeUnit.MILLISECONDS.toNanos(timeoutNotasMs));
+        try {
+            for (Future<?> tarea : tareas) {
+                if (rechazo.get() != null) {
+                    break;
+                }
+                try {
+                    tarea.get(Math.max(0, limite - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    tarea.cancel(true);
+                } catch (ExecutionException | CancellationException e) {
+                    // Los errores de cada asignatura ya se manejan dentro de la tarea.
+                }
+            }
+        } catch (InterruptedException e) {
+            tareas.forEach(tarea -> tarea.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IOException("Se interrumpió la obtención de las calificaciones.", e);
+        }
+        if (rechazo.get() != null) {
+            tareas.forEach(tarea -> tarea.cancel(true));
+            throw rechazo.get();
+        }
 
-            } catch (Exception e) {
-                System.err.println("Error calculando promedio para " + nombreAsignatura + ": " + e.getMessage());
-                asignaturasConPromedio.add(new AsignaturaDto(nombreAsignatura, 0.0));
+        List<AsignaturaDto> asignaturasConPromedio = new ArrayList<>(nombres.size());
+        for (int i = 0; i < nombres.size(); i++) {
+            if (resultados.get(i) == null) {
+                completas.set(false);
+                log.warn("Tiempo agotado calculando promedio para {}", nombres.get(i));
+                publicar.accept(i, new AsignaturaDto(nombres.get(i), 0.0));
             }
+            asignaturasConPromedio.add(resultados.get(i));
         }
-        return asignaturasConPromedio;
+        return new AsignaturasPeriodo(asignaturasConPromedio, completas.get());
     }
 
-    // Modificamos la firma para quitar el parámetro de cookies
-    private double getAsignaturaPromedio(String sessionId, String onClickAttr, Document mainPageDoc, int detIndex) throws IOException {
+    private ResultadoNotas getAsignaturaPromedio(String sessionId, String onClickAttr, Map<String, String> datosFormulario, int detIndex) throws IOException {
         boolean isModular = onClickAttr.contains("ver_calificacion_modular");
-        // Ya no pasamos las cookies
-        Document notasDoc = getNotasHtml(sessionId, onClickAttr, mainPageDoc, detIndex);
+        RespuestaIntranet respuesta = getNotasHtml(sessionId, onClickAttr, datosFormulario, detIndex);
+
+        // Si la página es idéntica a la última vista para este alumno y asignatura, no se parsea.
+        // El alumno se toma de la propia página (alu_rut) y no del pool de sesiones, para que la
+        // huella sirva también con sesiones que no están en el pool, como las del barrido.
+        String clave = claveSeccion(onClickAttr);
+        String aluRut = alumnoDeNotas(onClickAttr, datosFormulario);
+        String claveNotas = (aluRut != null ? aluRut : sessionId) + "|" + clave;
+        byte[] huella = sha256(respuesta.cuerpo());
+        NotasVistas vistas = notasVistas.get(claveNotas);
+        if (vistas != null && MessageDigest.isEqual(vistas.huella(), huella)) {
+            // Si otra página de la sección ya trajo una tabla de ponderaciones distinta, el
+            // resultado guardado se calculó con factores que ya no corren y se vuelve a calcular.
+            PlanPonderacion conocido = isModular ? null : planesPonderacion.getAunVencido(clave);
+            if (conocido == null || conocido.huella() == vistas.huellaPlan()) {
+                notasSinCambios.increment();
+                return vistas.resultado();
+            }
+        }
 
+        // El tiempo de parseo incluye armar el DOM con Jsoup y calcular el promedio.
+        Timer.Sample parseo = Timer.start(meterRegistry);
+        ResultadoNotas resultado;
+        long huellaPlan = 0;
         if (isModular) {
-            return calculatePromedioModular(notasDoc);
+            resultado = NotasParser.parseModular(respuesta.documento());
         } else {
-            return calculatePromedioNormal(notasDoc);
+            Document documento = respuesta.documento();
+            PlanPonderacion vigente = planesPonderacion.get(clave);
+            PlanPonderacion anterior = vigente != null ? vigente : planesPonderacion.getAunVencido(clave);
+            PlanPonderacion plan = NotasParser.planPonderacion(documento, anterior);
+            if (plan != vigente) {
+                // También si la huella coincidió con un plan vencido: así vuelve a quedar vigente.
+                planesPonderacion.put(clave, plan);
+            }
+            // El plan ya se comparó con la tabla de esta página, así que el resultado se puede guardar.
+            resultado = NotasParser.aplicarPlan(plan, documento);
+            huellaPlan = plan.huella();
+        }
+        parseo.stop(timerParseo(isModular ? "notas-modular" : "notas-normal"));
+        notasVistas.put(claveNotas, new NotasVistas(huella, huellaPlan, resultado));
+        return resultado;
+    }
+
+    // Sección de un ramo a partir de su onClick, como "agn_codigo|seccion|ano|periodo".
+    // Normal: abrir_CalifShow(rut, agn_codigo, ano, periodo, seccion, nombre).
+    // Modular: ver_calificacion_modular(agn_codigo, seccion, ano, periodo, ...).
+    private static String claveSeccion(String onClickAttr) {
+        String[] params = NotasParser.parametrosOnClick(onClickAttr);
+        if (onClickAttr.contains("ver_calificacion_modular")) {
+            return NotasParser.soloDigitos(params[0]) + "|" + params[1] + "|" + params[2] + "|" + params[3];
+        }
+        return NotasParser.soloDigitos(params[1]) + "|" + params[4] + "|" + params[2] + "|" + params[3];
+    }
+
+    // alu_rut con que la intranet identifica al alumno: va en el onClick de los ramos normales y en
+    // el formulario de la página para los modulares.
+    private static String alumnoDeNotas(String onClickAttr, Map<String, String> datosFormulario) {
+        if (onClickAttr.contains("ver_calificacion_modular")) {
+            return datosFormulario.get("alu_rut");
+        }
+        return NotasParser.parametrosOnClick(onClickAttr)[0].trim();
+    }
+
+    private static byte[] sha256(byte[] datos) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(datos);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
         }
     }
 
-    // Modificamos la firma para quitar el parámetro de cookies
-    private Document getNotasHtml(String sessionId, String onClickAttr, Document mainPageDoc, int detIndex) throws IOException {
-        String paramsString = onClickAttr.substring(onClickAttr.indexOf('(') + 1, onClickAttr.lastIndexOf(')'));
-        String[] params = paramsString.split(",\\s*");
+    private Timer timerParseo(String pagina) {
+        return Timer.builder("scraping.parseo")
+                .description("Tiempo de parseo de las páginas de notas ya descargadas")
+                .tag("pagina", pagina)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    // Las páginas en streaming se parsean mientras llegan, así que su tiempo incluye la descarga.
+    private Timer timerLectura(String pagina) {
+        return Timer.builder("scraping.lectura")
+                .description("Tiempo de descarga y parseo de las páginas leídas en streaming")
+                .tag("pagina", pagina)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private RespuestaIntranet getNotasHtml(String sessionId, String onClickAttr, Map<String, String> datosFormulario, int detIndex) throws IOException {
+        String[] params = NotasParser.parametrosOnClick(onClickAttr);
         String endpoint;
-        Connection connection;
+        String tipo;
+        String notasUrl;
+        Map<String, String> formulario = new LinkedHashMap<>();
 
         if (onClickAttr.contains("abrir_CalifShow")) {
             endpoint = "remote_ver_calif_greybox.php";
+            tipo = "notas-normal";
             String aluRut = params[0];
-            String agnCodigo = params[1].replaceAll("\\D+", "");
+            String agnCodigo = NotasParser.soloDigitos(params[1]);
             String ano = params[2];
             String periodo = params[3];
             String seccion = params[4];
             String nombre = params[5].replace("'", "").trim();
 
-            String notasUrl = INTRANET_ROOT_URL + sessionId + "/calificaciones/" + endpoint +
+            notasUrl = intranetRootUrl + sessionId + "/calificaciones/" + endpoint +
                     "?det=" + detIndex +
                     "&alu_rut=" + aluRut +
                     "&agn_codigo=" + agnCodigo +
@@ -370,177 +743,118 @@ public class UbbScrapingService {
                     "&periodo=" + periodo +
                     "&seccion=" + seccion +
                     "&nombre=" + java.net.URLEncoder.encode(nombre, java.nio.charset.StandardCharsets.UTF_8);
-
-            connection = Jsoup.connect(notasUrl);
         } else {
             endpoint = "detalle_calificacion_modular.php";
-            String aluRut = mainPageDoc.select("input[name=alu_rut]").val();
-            String crrCodigo = mainPageDoc.select("input[name=crr_codigo]").val();
-            String pcaCodigo = mainPageDoc.select("input[name=pca_codigo]").val();
-            String alcAnoIngreso = mainPageDoc.select("input[name=alc_ano_ingreso]").val();
-            String alcPeriodo = mainPageDoc.select("input[name=alc_periodo]").val();
-
-            String asig = params[0].replaceAll("\\D+", "");
+            tipo = "notas-modular";
+            String aluRut = datosFormulario.get("alu_rut");
+            String crrCodigo = datosFormulario.get("crr_codigo");
+            String pcaCodigo = datosFormulario.get("pca_codigo");
+            String alcAnoIngreso = datosFormulario.get("alc_ano_ingreso");
+            String alcPeriodo = datosFormulario.get("alc_periodo");
+
+            String asig = NotasParser.soloDigitos(params[0]);
             String sec = params[1];
             String agnio = params[2];
             String per = params[3];
 
-            String notasUrl = INTRANET_ROOT_URL + sessionId + "/calificaciones_escala/" + endpoint;
-            connection = Jsoup.connect(notasUrl)
-                    .data("agn_codigo", asig, "seccion", sec, "ano", agnio, "periodo", per, "alu_rut", aluRut, "crr_codigo", crrCodigo, "pca_codigo", pcaCodigo, "alc_ano_ingreso", alcAnoIngreso, "alc_periodo", alcPeriodo);
-        }
-
-        // La sesión principal se maneja a nivel de controlador, no necesitamos pasar cookies aquí
-        return connection.userAgent(USER_AGENT).post();
-    }
-
-    private double calculatePromedioNormal(Document notasDoc) {
-        // --- PASO 1 Y 2 (SIN CAMBIOS) ---
-        // La lógica para construir la estructura de Evaluacion y asignar las notas
-        // es la misma que en la respuesta anterior.
-        List<Evaluacion> evaluaciones = new ArrayList<>();
-        Elements ponderacionRows = notasDoc.select("h3:contains(Ponderaciones) ~ div table tbody tr");
-        Evaluacion evaluacionPadreActual = null;
-        for (Element row : ponderacionRows) {
-            Elements cells = row.select("td");
-            if (row.select("i.fa-book").size() > 0) {
-                String nombre = cells.get(0).text().trim();
-                int factor = Integer.parseInt(cells.get(2).text().trim());
-                evaluacionPadreActual = new Evaluacion(nombre, factor);
-                evaluaciones.add(evaluacionPadreActual);
-            } else if (row.select("i.fa-chevron-right").size() > 0 && evaluacionPadreActual != null) {
-                String nombreSub = cells.get(0).text().trim();
-                int factorSub = Integer.parseInt(cells.get(2).text().trim());
-                evaluacionPadreActual.subEvaluaciones.add(new SubEvaluacion(nombreSub, factorSub));
-            }
+            notasUrl = intranetRootUrl + sessionId + "/calificaciones_escala/" + endpoint;
+            formulario.put("agn_codigo", asig);
+            formulario.put("seccion", sec);
+            formulario.put("ano", agnio);
+            formulario.put("periodo", per);
+            formulario.put("alu_rut", aluRut);
+            formulario.put("crr_codigo", crrCodigo);
+            formulario.put("pca_codigo", pcaCodigo);
+            formulario.put("alc_ano_ingreso", alcAnoIngreso);
+            formulario.put("alc_periodo", alcPeriodo);
         }
 
-        Elements notasCells = notasDoc.select("h3:contains(Calificaciones) ~ div table tbody tr.Tabla3 td");
-        int notaIndex = 0;
-        for (Evaluacion eval : evaluaciones) {
-            if (notaIndex >= notasCells.size()) break;
-            if (eval.subEvaluaciones.isEmpty()) {
-                String textoNota = notasCells.get(notaIndex).text().trim();
-                if (!textoNota.isEmpty()) {
-                    try { eval.notaFinal = Double.parseDouble(textoNota.replace(',', '.')); } catch (Exception e) {}
-                }
-                notaIndex++;
-            } else {
-                for (SubEvaluacion sub : eval.subEvaluaciones) {
-                    if (notaIndex >= notasCells.size()) break;
-                    String textoNota = notasCells.get(notaIndex).text().trim();
-                    if (!textoNota.isEmpty()) {
-                        try { sub.nota = Double.parseDouble(textoNota.replace(',', '.')); } catch (Exception e) {}
-                    }
-                    notaIndex++;
-                }
-                eval.calcularNotaFinal();
-            }
-        }
-
-        // --- PASO 3: CALCULAR LA NOTA FINAL PONDERADA (LÓGICA CORREGIDA) ---
-        double sumaDeAportes = 0;
+        // La sesión principal se maneja a nivel de controlador, no necesitamos pasar cookies aquí.
+        // Ambas páginas solo muestran notas (el POST del modular no cambia nada), así que se
+        // pueden pedir dos veces: si una tarda más que de costumbre se manda una copia.
+        return hedgedFetcher.conCobertura(tipo,
+                () -> intranetClient.post(notasUrl, formulario));
+    }
 
-        System.out.println("\n--- DEBUG: CÁLCULO DE NOTA FINAL PROYECTADA ---");
-        for (Evaluacion eval : evaluaciones) {
-            if (eval.factorTotal > 0 && eval.notaFinal > 0) {
-                // El "aporte" de cada evaluación es su nota por su ponderación (factor)
-                double aporte = eval.notaFinal * eval.factorTotal;
-                sumaDeAportes += aporte;
-                System.out.println(String.format("  -> Aporte de '%s': Nota %.2f * Factor %d = %.2f", eval.nombre, eval.notaFinal, eval.factorTotal, aporte));
-            }
+    /**
+     * Año y periodo actuales de la sesión sin consultar la intranet: el año de los últimos datos
+     * leídos del alumno (aunque ya estén vencidos) y el periodo guardado para todo el proceso.
+     * @return Vacío si alguno de los dos todavía no se conoce (por ejemplo, justo tras reiniciar).
+     */
+    public Optional<PeriodoAcademico> periodoConocido(String sessionId) {
+        DatosAlumnoDto datos = cacheDatos(sessionId).getAunVencido(sessionId);
+        String periodo = periodoActual.get();
+        if (datos == null || periodo == null) {
+            return Optional.empty();
         }
-
-        // --- ¡AQUÍ ESTÁ EL CAMBIO CLAVE! ---
-        // El promedio final es la suma de los aportes, dividido por 100.
-        double promedioFinal = sumaDeAportes / 100.0;
-
-        System.out.println("Suma de Aportes (Nota * Factor): " + sumaDeAportes);
-        System.out.println("Cálculo Final: " + sumaDeAportes + " / 100.0 = " + promedioFinal);
-        System.out.println("--- FIN DEBUG ---\n");
-
-        return promedioFinal;
+        recordarSesion(sessionId);
+        return Optional.of(new PeriodoAcademico(datos.anio(), periodo));
     }
 
-    private double calculatePromedioModular(Document notasDoc) {
-        // 1. Encontrar el último módulo activo
-        Elements modulos = notasDoc.select("h3:contains(Calificaciones MÓDULO)");
-        Element ultimoModuloActivo = null;
-        for (int i = modulos.size() - 1; i >= 0; i--) {
-            Element moduloHeader = modulos.get(i);
-            Element tablaContainer = moduloHeader.nextElementSibling();
-            if (tablaContainer != null && !tablaContainer.select("tbody tr").isEmpty()) {
-                ultimoModuloActivo = tablaContainer;
-                break;
-            }
+    /**
+     * Igual que periodoConocido, pero si no se conoce lo consulta a la intranet.
+     */
+    public PeriodoAcademico periodoDeSesion(String sessionId) throws IOException {
+        Optional<PeriodoAcademico> conocido = periodoConocido(sessionId);
+        if (conocido.isPresent()) {
+            return conocido.get();
         }
+        return new PeriodoAcademico(getDatosAlumno(sessionId).anio(), obtenerPeriodoActual(sessionId));
+    }
 
-        if (ultimoModuloActivo == null) return 0.0;
-
-        System.out.println("\n--- DEBUG: Iniciando cálculo para RAMO MODULAR ---");
-        String moduloTitle = ultimoModuloActivo.previousElementSibling().text();
-        System.out.println("Calculando para el módulo: " + moduloTitle);
-
-        // --- LÓGICA JERÁRQUICA APLICADA A MODULARES ---
-
-        // PASO 1: CONSTRUIR LA ESTRUCTURA DE EVALUACIONES
-        // En los modulares, toda la info está en una sola tabla.
-        List<Evaluacion> evaluaciones = new ArrayList<>();
-        Evaluacion evaluacionPadreActual = null;
-
-        for (Element row : ultimoModuloActivo.select("tbody tr")) {
-            Elements cells = row.select("td");
-            if (cells.size() == 4) { // Es una evaluación principal
-                try {
-                    String nombre = cells.get(0).text().trim();
-                    int factor = Integer.parseInt(cells.get(2).text().trim());
-                    double nota = Double.parseDouble(cells.get(3).text().trim().replace(',', '.'));
-
-                    evaluacionPadreActual = new Evaluacion(nombre, factor);
-                    evaluacionPadreActual.notaFinal = nota; // Asignamos la nota directamente
-                    evaluaciones.add(evaluacionPadreActual);
+    public String obtenerPeriodoActual(String sessionId) throws IOException {
+        recordarSesion(sessionId);
 
-                } catch (NumberFormatException e) { /* Ignorar filas de pie de tabla */ }
-            }
-            // Aquí tendríamos que añadir la lógica si los modulares tuvieran sub-evaluaciones.
-            // Por ahora, el HTML que hemos visto no tiene ese caso, pero el código está listo para expandirse.
+        String periodo = periodoActual.get();
+        if (periodo != null) {
+            periodoAciertos.increment();
+            return periodo;
         }
+        periodoFallos.increment();
 
-        // PASO 2: CALCULAR LA NOTA FINAL PONDERADA
-        double sumaDeAportes = 0;
-        double sumaDeFactoresUsados = 0;
-
-        System.out.println("\n--- DEBUG: CÁLCULO DE NOTA FINAL MODULAR ---");
-        for (Evaluacion eval : evaluaciones) {
-            if (eval.factorTotal > 0 && eval.notaFinal > 0) {
-                double aporte = eval.notaFinal * eval.factorTotal;
-                sumaDeAportes += aporte;
-                sumaDeFactoresUsados += eval.factorTotal;
-                System.out.println(String.format("  -> Aporte de '%s': Nota %.2f * Factor %d = %.2f", eval.nombre, eval.notaFinal, eval.factorTotal, aporte));
-            }
+        // Caché vacía (por ejemplo, recién iniciada la aplicación): lo consultamos en vivo.
+        periodo = consultarPeriodoActual(sessionId);
+        if (!periodo.isEmpty()) {
+            periodoActual.set(periodo);
         }
-
-        // El promedio de un módulo SÍ se calcula sobre los factores cursados en ESE módulo.
-        double promedioFinal = (sumaDeFactoresUsados > 0) ? (sumaDeAportes / sumaDeFactoresUsados) : 0.0;
-
-        System.out.println("Suma de Aportes: " + sumaDeAportes);
-        System.out.println("Suma de Factores Usados: " + sumaDeFactoresUsados);
-        System.out.println("Cálculo Final: " + sumaDeAportes + " / " + sumaDeFactoresUsados + " = " + promedioFinal);
-        System.out.println("--- FIN DEBUG ---\n");
-
-        return promedioFinal;
+        return periodo;
     }
 
-    public String obtenerPeriodoActual(String sessionId) throws IOException {
-        Document doc = obtenerPaginaPeriodo(sessionId);// busca el input cuyo id es periodo_acad
+    // Las sesiones en segundo plano se cierran al terminar, así que no sirven para el refresco.
+    private void recordarSesion(String sessionId) {
+        if (!esSegundoPlano(sessionId)) {
+            ultimaSesion.set(sessionId);
+        }
+    }
 
-        return doc.select("input#periodo_acad").attr("value");
+    // Tarea en segundo plano que mantiene actualizado el periodo guardado. Si la última sesión ya
+    // expiró o la intranet falla, se conserva el valor anterior hasta el siguiente intento.
+    @Scheduled(initialDelayString = "${app.cache.periodo.refresco-ms:3600000}",
+               fixedDelayString = "${app.cache.periodo.refresco-ms:3600000}")
+    public void refrescarPeriodoActual() {
+        String sessionId = ultimaSesion.get();
+        if (sessionId == null) {
+            return;
+        }
+        try {
+            String periodo = consultarPeriodoActual(sessionId);
+            if (!periodo.isEmpty()) {
+                periodoActual.set(periodo);
+            }
+        } catch (IOException e) {
+            log.warn("No se pudo refrescar el periodo actual: {}", e.getMessage());
+        }
     }
 
-    private Document obtenerPaginaPeriodo(String sessionId) throws IOException {
-        String url = INTRANET_ROOT_URL + sessionId + "/alumnos/consulta_solicitud_retiro_temporal.php";
-        return Jsoup.connect(url)
-                .userAgent(USER_AGENT)
-                .get();
+    // Solo se necesita input#periodo_acad, así que la página se deja de leer al encontrarlo.
+    private String consultarPeriodoActual(String sessionId) throws IOException {
+        String url = intranetRootUrl + sessionId + "/alumnos/consulta_solicitud_retiro_temporal.php";
+        try (RespuestaStream response = hedgedFetcher.conReintentos("paginas",
+                () -> intranetClient.abrir("GET", url, null))) {
+            Timer.Sample lectura = Timer.start(meterRegistry);
+            String periodo = PaginaStreamParser.periodoActual(response.reader(), response.url().toString());
+            lectura.stop(timerLectura("periodo"));
+            return periodo;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,280 @@
+package cl.dnl.intranet.ubb_scraper.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Protección delante de todas las peticiones a la intranet (la usa IntranetHttpClient):
+ *
+ * - Límite de concurrencia adaptativo (AIMD): sube de a poco mientras las respuestas llegan bajo la
+ *   latencia objetivo y baja un 20% ante un timeout, un error o una respuesta lenta. Baja como mucho
+ *   una vez por "ronda": solo cuentan las peticiones que salieron después de la última bajada, así
+ *   una racha de respuestas lentas que ya estaban en curso no lleva el límite al mínimo de golpe.
+ * - Cola de espera acotada: si ya hay demasiadas peticiones esperando turno, o el turno no llega a
+ *   tiempo, se rechaza de inmediato con IntranetNoDisponibleException en vez de acumularlas.
+ * - Circuit breaker: si en la ventana de las últimas peticiones fallan demasiadas, se deja de llamar
+ *   a la intranet durante un tiempo; luego se deja pasar una sola petición de prueba.
+ *
+ * Cada entrar() devuelve un Turno que identifica la petición en salir() y registrar(); así solo la
+ * petición de prueba puede liberar o resolver la prueba.
+ */
+@Component
+public class UpstreamGuard {
+
+    private static final Logger log = LoggerFactory.getLogger(UpstreamGuard.class);
+
+    private enum EstadoCircuito { CERRADO, ABIERTO, SEMIABIERTO }
+
+    /** Turno tomado con entrar(); se entrega a registrar() y a salir(). */
+    public static final class Turno {
+        private final long inicio = System.nanoTime();
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition turnoLibre = lock.newCondition();
+
+    // --- Límite adaptativo ---
+    private final int limiteMinimo;
+    private final int limiteMaximo;
+    private final long latenciaObjetivoNanos;
+    private double limite;
+    private int enCurso;
+    private long ultimaBajada = System.nanoTime();
+
+    // --- Cola de espera ---
+    private final int maxEnEspera;
+    private final long esperaMaxNanos;
+    private int enEspera;
+
+    // --- Circuit breaker ---
+    private final boolean[] ventana; // true = falló
+    private final int minimoPeticiones;
+    private final double umbralFallos;
+    private final long aperturaNanos;
+    private int posicionVentana;
+    private int registradas;
+    private int fallosEnVentana;
+    private EstadoCircuito estado = EstadoCircuito.CERRADO;
+    private long abiertoHasta;
+    // Turno de la petición de prueba mientras el circuito está semiabierto, o null.
+    private Turno prueba;
+
+    private final Counter rechazosCola;
+    private final Counter rechazosCircuito;
+
+    public UpstreamGuard(MeterRegistry meterRegistry,
+                         @Value("${app.intranet.limite.inicial:16}") int limiteInicial,
+                         @Value("${app.intranet.limite.minimo:2}") int limiteMinimo,
+                         @Value("${app.intranet.max-concurrencia:32}") int limiteMaximo,
+                         @Value("${app.intranet.limite.latencia-objetivo-ms:3000}") long latenciaObjetivoMs,
+                         @Value("${app.intranet.cola.max-en-espera:64}") int maxEnEspera,
+                         @Value("${app.intranet.cola.espera-max-ms:2000}") long esperaMaxMs,
+                         @Value("${app.intranet.circuito.ventana:20}") int tamanoVentana,
+                         @Value("${app.intranet.circuito.minimo-peticiones:10}") int minimoPeticiones,
+                         @Value("${app.intranet.circuito.umbral-fallos:0.5}") double umbralFallos,
+                         @Value("${app.intranet.circuito.apertura-ms:30000}") long aperturaMs) {
+        this.limiteMinimo = Math.max(1, limiteMinimo);
+        this.limiteMaximo = Math.max(this.limiteMinimo, limiteMaximo);
+        this.limite = Math.min(this.limiteMaximo, Math.max(this.limiteMinimo, limiteInicial));
+        this.latenciaObjetivoNanos = TimeUnit.MILLISECONDS.toNanos(latenciaObjetivoMs);
+        this.maxEnEspera = maxEnEspera;
+        this.esperaMaxNanos = TimeUnit.MILLISECONDS.toNanos(esperaMaxMs);
+        this.ventana = new boolean[Math.max(1, tamanoVentana)];
+        this.minimoPeticiones = Math.min(minimoPeticiones, this.ventana.length);
+        this.umbralFallos = umbralFallos;
+        this.aperturaNanos = TimeUnit.MILLISECONDS.toNanos(aperturaMs);
+
+        Gauge.builder("intranet.limite", this, g -> g.leer(() -> g.limite))
+                .description("Límite actual de peticiones simultáneas a la intranet").register(meterRegistry);
+        Gauge.builder("intranet.en.curso", this, g -> g.leer(() -> g.enCurso)).register(meterRegistry);
+        Gauge.builder("intranet.en.espera", this, g -> g.leer(() -> g.enEspera)).register(meterRegistry);
+        Gauge.builder("intranet.circuito.abierto", this, g -> g.leer(() -> g.estado == EstadoCircuito.CERRADO ? 0 : 1))
+                .register(meterRegistry);
+        this.rechazosCola = Counter.builder("intranet.rechazos").tag("motivo", "cola").register(meterRegistry);
+        this.rechazosCircuito = Counter.builder("intranet.rechazos").tag("motivo", "circuito").register(meterRegistry);
+    }
+
+    /**
+     * Espera un turno para hacer una petición, como máximo la espera configurada o lo que quede
+     * del Plazo de la petición. Cada llamada exitosa debe terminar en salir(turno).
+     * @throws IntranetNoDisponibleException Si el circuito está abierto o la cola está llena o el
+     *                                       turno no llegó a tiempo.
+     * @throws Plazo.PlazoAgotadoException Si el plazo de la petición venció esperando turno.
+     */
+    public Turno entrar() throws IOException {
+        Turno turno = new Turno();
+        lock.lock();
+        try {
+            permitirPorCircuito(turno);
+            if (enCurso < (int) limite) {
+                enCurso++;
+                return turno;
+            }
+            if (enEspera >= maxEnEspera) {
+                rechazosCola.increment();
+                liberarPrueba(turno);
+                throw new IntranetNoDisponibleException("La intranet está saturada; hay demasiadas peticiones en espera.");
+            }
+            enEspera++;
+            try {
+                long restante = Plazo.acotarNanos(esperaMaxNanos);
+                boolean porPlazo = restante < esperaMaxNanos;
+                while (enCurso >= (int) limite) {
+                    if (restante <= 0 && porPlazo) {
+                        liberarPrueba(turno);
+                        throw new Plazo.PlazoAgotadoException("Se agotó el plazo esperando turno para la intranet.");
+                    }
+                    if (restante <= 0) {
+                        rechazosCola.increment();
+                        liberarPrueba(turno);
+                        throw new IntranetNoDisponibleException("La intranet está saturada; no hubo turno a tiempo.");
+                    }
+                    restante = turnoLibre.awaitNanos(restante);
+                }
+                enCurso++;
+                return turno;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                liberarPrueba(turno);
+                throw new IntranetNoDisponibleException("Se interrumpió la espera de turno para la intranet.");
+            } finally {
+                enEspera--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Libera el turno tomado con entrar(). */
+    public void salir(Turno turno) {
+        lock.lock();
+        try {
+            enCurso--;
+            // Si era la petición de prueba y terminó sin registrar resultado (por ejemplo, se
+            // interrumpió), se permite otra prueba.
+            liberarPrueba(turno);
+            turnoLibre.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Registra el resultado de una petición hecha con un turno.
+     * @param fallo Timeout, error de conexión o respuesta 5xx.
+     */
+    public void registrar(Turno turno, boolean fallo, long latenciaNanos) {
+        lock.lock();
+        try {
+            // AIMD: +1/limite por respuesta buena (≈ +1 por "ronda"), ×0.8 ante fallo o lentitud,
+            // salvo que la petición haya salido antes de la última bajada.
+            if (fallo || latenciaNanos > latenciaObjetivoNanos) {
+                if (turno.inicio - ultimaBajada > 0) {
+                    limite = Math.max(limiteMinimo, limite * 0.8);
+                    ultimaBajada = System.nanoTime();
+                }
+            } else {
+                limite = Math.min(limiteMaximo, limite + 1.0 / limite);
+                turnoLibre.signal();
+            }
+            registrarEnCircuito(turno, fallo);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void permitirPorCircuito(Turno turno) throws IntranetNoDisponibleException {
+        if (estado == EstadoCircuito.ABIERTO) {
+            if (System.nanoTime() - abiertoHasta < 0) {
+                rechazosCircuito.increment();
+                throw new IntranetNoDisponibleException("La intranet no responde; se volverá a intentar en unos segundos.");
+            }
+            estado = EstadoCircuito.SEMIABIERTO;
+            prueba = null;
+        }
+        if (estado == EstadoCircuito.SEMIABIERTO) {
+            if (prueba != null) {
+                rechazosCircuito.increment();
+                throw new IntranetNoDisponibleException("La intranet no responde; se está probando si volvió.");
+            }
+            prueba = turno;
+        }
+    }
+
+    // Si la petición de prueba no llegó a salir, otra puede tomar su lugar. Las demás peticiones
+    // (por ejemplo, las que salieron antes de abrirse el circuito) no tocan la prueba.
+    private void liberarPrueba(Turno turno) {
+        if (prueba == turno) {
+            prueba = null;
+        }
+    }
+
+    private void registrarEnCircuito(Turno turno, boolean fallo) {
+        if (estado == EstadoCircuito.SEMIABIERTO) {
+            // Mientras se prueba, solo cuenta el resultado de la petición de prueba.
+            if (prueba != turno) {
+                return;
+            }
+            if (fallo) {
+                abrir();
+            } else {
+                log.info("La intranet volvió a responder; se cierra el circuito.");
+                estado = EstadoCircuito.CERRADO;
+                prueba = null;
+                reiniciarVentana();
+            }
+            return;
+        }
+        if (estado == EstadoCircuito.ABIERTO) {
+            return; // Respuestas de peticiones que salieron antes de abrirse.
+        }
+
+        if (registradas == ventana.length && ventana[posicionVentana]) {
+            fallosEnVentana--;
+        }
+        ventana[posicionVentana] = fallo;
+        if (fallo) fallosEnVentana++;
+        posicionVentana = (posicionVentana + 1) % ventana.length;
+        registradas = Math.min(registradas + 1, ventana.length);
+
+        if (registradas >= minimoPeticiones && fallosEnVentana >= umbralFallos * registradas) {
+            abrir();
+        }
+    }
+
+    private void abrir() {
+        log.warn("Demasiados fallos de la intranet; se abre el circuito por {} ms.", TimeUnit.NANOSECONDS.toMillis(aperturaNanos));
+        estado = EstadoCircuito.ABIERTO;
+        abiertoHasta = System.nanoTime() + aperturaNanos;
+        prueba = null;
+        reiniciarVentana();
+    }
+
+    private void reiniciarVentana() {
+        Arrays.fill(ventana, false);
+        posicionVentana = 0;
+        registradas = 0;
+        fallosEnVentana = 0;
+    }
+
+    private double leer(DoubleSupplier valor) {
+        lock.lock();
+        try {
+            return valor.getAsDouble();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -7,11 +7,40 @@ document.addEventListener('DOMContentLoaded', () => {
     const mainContent = document.querySelector('.main-content');
 
     let carrerasDisponibles = [];
+    // Carrera y asignaturas que se están mostrando, para aplicar los cambios que llegan por push.
+    let carreraActual = null;
+    let asignaturasActuales = [];
 
+    // Construye el HTML del cuadro de una asignatura
+    function ramoHtml(asignatura) {
+        // 1. Determinar la clase de estado según el promedio
+        const notaDeCorte = 3.95;
+        let estadoClase = '';
+        if (asignatura.promedio > 0) { // Solo aplicar color si hay un promedio calculado
+            estadoClase = asignatura.promedio >= notaDeCorte ? 'ramo-aprobando' : 'ramo-reprobando';
+        }
+
+        // 2. Construir el HTML del cuadro
+        // Añadimos la clase de estado al div principal.
+        // El texto del promedio ahora está dentro de su propio span.
+        return `<div class="ramo-box ${estadoClase}">
+                    <span class="ramo-nombre">${asignatura.nombre}</span>
+                    <span class="ramo-promedio">Promedio: ${asignatura.promedio.toFixed(1)}</span>
+                </div>`;
+    }
+
+    function renderRamos(asignaturas) {
+        const visibles = asignaturas.filter(a => a);
+        mainContent.innerHTML = '<div class="ramos-grid">' + visibles.map(ramoHtml).join('') + '</div>';
+    }
+
+    // Pide las asignaturas al endpoint en streaming: cada línea es un evento JSON y las asignaturas
+    // se van mostrando apenas llegan, en su posición original.
     async function loadRamos(carreraSeleccionada) {
         mainContent.innerHTML = '<p>Cargando asignaturas...</p>';
+        carreraActual = carreraSeleccionada;
         try {
-            const response = await fetch(`http://localhost:8080/api/asignaturas/parsed/${sessionId}`, {
+            const response = await fetch(`http://localhost:8080/api/asignaturas/parsed/${sessionId}/stream`, {
                 method: 'POST',
                 headers: { 'Content-Type': 'application/json' },
                 body: JSON.stringify(carreraSeleccionada)
@@ -19,30 +48,41 @@ document.addEventListener('DOMContentLoaded', () => {
 
             if (!response.ok) throw new Error('No se pudieron cargar las asignaturas.');
 
-            const asignaturas = await response.json();
-
-            if (asignaturas.length > 0) {
-                let gridHtml = '<div class="ramos-grid">';
-                
-                asignaturas.forEach(asignatura => {
-                    // 1. Determinar la clase de estado según el promedio
-                    const notaDeCorte = 3.95;
-                    let estadoClase = '';
-                    if (asignatura.promedio > 0) { // Solo aplicar color si hay un promedio calculado
-                        estadoClase = asignatura.promedio >= notaDeCorte ? 'ramo-aprobando' : 'ramo-reprobando';
-                    }
+            const asignaturas = [];
+            asignaturasActuales = asignaturas;
+            const reader = response.body.getReader();
+            const decoder = new TextDecoder();
+            let pendiente = '';
+            let total = null;
 
-                    // 2. Construir el HTML del cuadro
-                    // Añadimos la clase de estado al div principal.
-                    // El texto del promedio ahora está dentro de su propio span.
-                    gridHtml += `<div class="ramo-box ${estadoClase}">
-                                    <span class="ramo-nombre">${asignatura.nombre}</span>
-                                    <span class="ramo-promedio">Promedio: ${asignatura.promedio.toFixed(1)}</span>
-                                </div>`;
-                });
-                gridHtml += '</div>';
-                mainContent.innerHTML = gridHtml;
-            } else {
+            const procesarLinea = (linea) => {
+                if (!linea.trim()) return;
+                const evento = JSON.parse(linea);
+                if (evento.tipo === 'asignatura') {
+                    asignaturas[evento.indice] = evento.asignatura;
+                    renderRamos(asignaturas);
+                } else if (evento.tipo === 'fin') {
+                    total = evento.total;
+                } else if (evento.tipo === 'error') {
+                    throw new Error(evento.mensaje);
+                }
+            };
+
+            while (true) {
+                const { done, value } = await reader.read();
+                if (done) break;
+                pendiente += decoder.decode(value, { stream: true });
+
+                const lineas = pendiente.split('\n');
+                pendiente = lineas.pop(); // La última puede estar incompleta
+                lineas.forEach(procesarLinea);
+            }
+            // El último evento puede llegar sin salto de línea final, y el decoder puede tener
+            // guardados los últimos bytes de un carácter.
+            pendiente += decoder.decode();
+            pendiente.split('\n').forEach(procesarLinea);
+
+            if (total === 0) {
                 mainContent.innerHTML = '<p>No se encontraron asignaturas para la carrera y período seleccionados.</p>';
             }
 
@@ -52,11 +92,15 @@ document.addEventListener('DOMContentLoaded', () => {
         }
     }
     
+    // La primera carga usa /api/bootstrap, que trae el dashboard y las asignaturas de la
+    // carrera por defecto en una sola respuesta.
     async function loadDashboard() {
+        mainContent.innerHTML = '<p>Cargando asignaturas...</p>';
         try {
-            const response = await fetch(`http://localhost:8080/api/dashboard/${sessionId}`);
+            const response = await fetch(`http://localhost:8080/api/bootstrap/${sessionId}`);
             if (!response.ok) throw new Error('No se pudieron cargar los datos del dashboard.');
-            const data = await response.json();
+            const bootstrap = await response.json();
+            const data = bootstrap.dashboard;
 
             welcomeTextElement.textContent = `¡Bienvenido, ${data.nombreUsuario}!`;
             
@@ -79,10 +123,17 @@ document.addEventListener('DOMContentLoaded', () => {
                     }
                 });
 
-                loadRamos(carrerasDisponibles[0]);
+                carreraActual = bootstrap.carrera;
+                asignaturasActuales = bootstrap.asignaturas;
+                if (bootstrap.asignaturas.length > 0) {
+                    renderRamos(bootstrap.asignaturas);
+                } else {
+                    mainContent.innerHTML = '<p>No se encontraron asignaturas para la carrera y período seleccionados.</p>';
+                }
 
             } else {
                 careerContainer.innerHTML = 'No se encontraron carreras.';
+                mainContent.innerHTML = '';
             }
 
         } catch (error) {
@@ -91,5 +142,35 @@ document.addEventListener('DOMContentLoaded', () => {
         }
     }
 
+    // Suscripción a los cambios de notas detectados en el servidor. Solo llegan las asignaturas que
+    // cambiaron; si son de la carrera que se está mostrando, se actualizan en su lugar.
+    // EventSource se reconecta solo si la conexión se corta. Los cambios ocurridos mientras estaba
+    // desconectado no se reenvían, así que al reconectarse se vuelven a pedir las notas.
+    function suscribirCambios() {
+        const eventos = new EventSource(`http://localhost:8080/api/suscripcion/${sessionId}`);
+        let conectado = false;
+        eventos.addEventListener('open', () => {
+            if (conectado && carreraActual) {
+                loadRamos(carreraActual);
+            }
+            conectado = true;
+        });
+        eventos.addEventListener('cambios', (event) => {
+            const cambios = JSON.parse(event.data);
+            if (!carreraActual || cambios.carrera !== carreraActual.valorCompleto) return;
+
+            cambios.asignaturas.forEach(cambiada => {
+                const indice = asignaturasActuales.findIndex(a => a && a.nombre === cambiada.nombre);
+                if (indice >= 0) {
+                    asignaturasActuales[indice] = cambiada;
+                } else {
+                    asignaturasActuales.push(cambiada);
+                }
+            });
+            renderRamos(asignaturasActuales);
+        });
+    }
+
     loadDashboard();
+    suscribirCambios();
 });
\ No newline at end of file
@@ -0,0 +1,88 @@
+package cl.dnl.intranet.ubb_scraper.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Prueba de carga manual (no se ejecuta con "mvn test"): lanza cargas concurrentes de
+ * /api/dashboard contra una instancia ya levantada, subiendo la concurrencia por escalones, e
+ * informa el throughput, los errores y los percentiles de latencia de cada escalón.
+ *
+ * Para comparar el antes y el después, levantar la aplicación una vez con
+ * --spring.threads.virtual.enabled=false y otra con el valor por defecto (true), y correr:
+ *
+ *   java ... DashboardLoadRunner http://localhost:8080 SESSION_ID 1,10,50,100,200,400 20
+ *
+ * (URL base, sessionId válido, escalones de concurrencia y peticiones por usuario simulado).
+ */
+public class DashboardLoadRunner {
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:8080";
+        String sessionId = args.length > 1 ? args[1] : "SESSION_ID";
+        String[] escalones = (args.length > 2 ? args[2] : "1,10,50,100,200").split(",");
+        int peticionesPorUsuario = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        URI uri = URI.create(baseUrl + "/api/dashboard/" + sessionId);
+
+        System.out.println("concurrencia  peticiones  errores  req/s    p50(ms)  p95(ms)  p99(ms)");
+        for (String escalon : escalones) {
+            int concurrencia = Integer.parseInt(escalon.trim());
+            Resultado r = ejecutarEscalon(client, uri, concurrencia, peticionesPorUsuario);
+            System.out.printf("%12d  %10d  %7d  %7.1f  %7d  %7d  %7d%n",
+                    concurrencia, r.total, r.errores, r.throughput,
+                    r.percentil(50), r.percentil(95), r.percentil(99));
+        }
+    }
+
+    private record Resultado(int total, int errores, double throughput, List<Long> latenciasMs) {
+        long percentil(int p) {
+            if (latenciasMs.isEmpty()) return 0;
+            int indice = (int) Math.ceil(p / 100.0 * latenciasMs.size()) - 1;
+            return latenciasMs.get(Math.max(0, indice));
+        }
+    }
+
+    private static Resultado ejecutarEscalon(HttpClient client, URI uri, int concurrencia, int peticionesPorUsuario) throws Exception {
+        List<Long> latencias = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger errores = new AtomicInteger();
+        long inicio = System.nanoTime();
+
+        try (ExecutorService usuarios = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> tareas = new ArrayList<>();
+            for (int u = 0; u < concurrencia; u++) {
+                tareas.add(usuarios.submit(() -> {
+                    for (int i = 0; i < peticionesPorUsuario; i++) {
+                        long t0 = System.nanoTime();
+                        try {
+                            HttpRequest request = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(60)).GET().build();
+                            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                            if (response.statusCode() != 200) errores.incrementAndGet();
+                        } catch (Exception e) {
+                            errores.incrementAndGet();
+                        }
+                        latencias.add((System.nanoTime() - t0) / 1_000_000);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> tarea : tareas) tarea.get();
+        }
+
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+        List<Long> ordenadas = new ArrayList<>(latencias);
+        Collections.sort(ordenadas);
+        return new Resultado(ordenadas.size(), errores.get(), ordenadas.size() / segundos, ordenadas);
+    }
+}
@@ -0,0 +1,224 @@
+package cl.dnl.intranet.ubb_scraper.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Intranet falsa para pruebas de regresión y de carga, sin tocar la de la universidad.
+ *
+ * Reproduce el flujo que usa UbbScrapingService: la redirección 302 de /intranet/ con el id de
+ * sesión en la ruta, el login en inicio.php, la página de asignaturas (ver_calif_show.php), las
+ * notas de ramos normales y modulares, y la página del periodo. Las páginas son los fixtures
+ * anonimizados de src/test/resources/fixtures.
+ *
+ * Cada respuesta espera latenciaMs más un jitter aleatorio de hasta jitterMs, y una fracción
+ * tasaError de las peticiones responde 500. Cualquier clave se acepta salvo CLAVE_RECHAZADA.
+ *
+ * Para usarla como upstream de la aplicación:
+ *
+ *   java ... FakeIntranetServer 9090 80 40 0.01   (puerto, latencia, jitter, tasa de error)
+ *   y levantar la aplicación con --app.intranet.base-url=http://localhost:9090/
+ */
+public class FakeIntranetServer implements AutoCloseable {
+
+    public static final String CLAVE_RECHAZADA = "clave-incorrecta";
+    public static final String PERIODO = "2";
+
+    private final HttpServer server;
+    private final long latenciaMs;
+    private final long jitterMs;
+    private final double tasaError;
+
+    private final Set<String> sesionesAutenticadas = ConcurrentHashMap.newKeySet();
+    private final AtomicLong contadorSesiones = new AtomicLong();
+    private final AtomicLong peticiones = new AtomicLong();
+
+    private final byte[] paginaAsignaturas = leerFixture("ver_calif_show.html");
+    private volatile byte[] paginaNormal = leerFixture("remote_ver_calif_greybox.html");
+    private final byte[] paginaModular = leerFixture("detalle_calificacion_modular.html");
+
+    public FakeIntranetServer(int puerto, long latenciaMs, long jitterMs, double tasaError) throws IOException {
+        this.latenciaMs = latenciaMs;
+        this.jitterMs = jitterMs;
+        this.tasaError = tasaError;
+        this.server = HttpServer.create(new InetSocketAddress("localhost", puerto), 0);
+        this.server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        this.server.createContext("/", this::atender);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int puerto = args.length > 0 ? Integer.parseInt(args[0]) : 9090;
+        long latencia = args.length > 1 ? Long.parseLong(args[1]) : 50;
+        long jitter = args.length > 2 ? Long.parseLong(args[2]) : 25;
+        double tasaError = args.length > 3 ? Double.parseDouble(args[3]) : 0.0;
+
+        FakeIntranetServer intranet = new FakeIntranetServer(puerto, latencia, jitter, tasaError).iniciar();
+        System.out.println("Intranet falsa escuchando en " + intranet.baseUrl());
+        Thread.currentThread().join();
+    }
+
+    public FakeIntranetServer iniciar() {
+        server.start();
+        return this;
+    }
+
+    /** URL para app.intranet.base-url, terminada en "/". */
+    public String baseUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/";
+    }
+
+    /** Peticiones recibidas desde que se levantó el servidor. */
+    public long peticiones() {
+        return peticiones.get();
+    }
+
+    /**
+     * Reemplaza el texto de la página de notas de los ramos normales (por ejemplo, un factor de la
+     * tabla de ponderaciones) y devuelve la página anterior para restaurarla con restaurarPaginaNormal.
+     */
+    public byte[] modificarPaginaNormal(String buscado, String reemplazo) {
+        byte[] anterior = paginaNormal;
+        String pagina = new String(anterior, StandardCharsets.UTF_8);
+        if (!pagina.contains(buscado)) {
+            throw new IllegalArgumentException("La página de notas no contiene " + buscado);
+        }
+        paginaNormal = pagina.replace(buscado, reemplazo).getBytes(StandardCharsets.UTF_8);
+        return anterior;
+    }
+
+    public void restaurarPaginaNormal(byte[] pagina) {
+        paginaNormal = pagina;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void atender(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            peticiones.incrementAndGet();
+            simularLatencia();
+            if (tasaError > 0 && ThreadLocalRandom.current().nextDouble() < tasaError) {
+                responder(exchange, 500, "<html><body>Error interno</body></html>".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+
+            String path = exchange.getRequestURI().getPath();
+            if (path.equals("/")) {
+                exchange.getResponseHeaders().add("Set-Cookie", "ubb_portal=" + contadorSesiones.get() + "; Path=/");
+                responder(exchange, 200, html("Portal UBB"));
+                return;
+            }
+            if (path.equals("/intranet/")) {
+                // La intranet entrega el id de sesión como primer segmento de la ruta.
+                String sessionId = "S" + contadorSesiones.incrementAndGet() + Long.toHexString(ThreadLocalRandom.current().nextLong());
+                exchange.getResponseHeaders().add("Set-Cookie", "PHPSESSID=" + sessionId + "; Path=/");
+                redirigir(exchange, "/" + sessionId + "/intranet/");
+                return;
+            }
+
+            String[] partes = path.substring(1).split("/", 2);
+            String sessionId = partes[0];
+            String recurso = partes.length > 1 ? partes[1] : "";
+
+            if (recurso.equals("intranet/")) {
+                responder(exchange, 200, html("Ingreso a la intranet"));
+                return;
+            }
+            if (recurso.equals("intranet/inicio.php") && "POST".equals(exchange.getRequestMethod())) {
+                Map<String, String> formulario = leerFormulario(exchange);
+                if (CLAVE_RECHAZADA.equals(formulario.get("clave"))) {
+                    redirigir(exchange, "/" + sessionId + "/intranet/");
+                    return;
+                }
+                sesionesAutenticadas.add(sessionId);
+                responder(exchange, 200, html("Bienvenido"));
+                return;
+            }
+
+            // Desde aquí todas las páginas requieren sesión; una sesión desconocida vuelve al login.
+            if (!sesionesAutenticadas.contains(sessionId)) {
+                redirigir(exchange, "/intranet/");
+                return;
+            }
+            switch (recurso) {
+                case "intranet/inicio.php" -> responder(exchange, 200, html("Bienvenido"));
+                case "calificaciones/ver_calif_show.php" -> responder(exchange, 200, paginaAsignaturas);
+                case "calificaciones/remote_ver_calif_greybox.php" -> responder(exchange, 200, paginaNormal);
+                case "calificaciones_escala/detalle_calificacion_modular.php" -> responder(exchange, 200, paginaModular);
+                case "alumnos/consulta_solicitud_retiro_temporal.php" -> responder(exchange, 200,
+                        ("<html><body><form><input type=\"hidden\" id=\"periodo_acad\" value=\"" + PERIODO + "\">"
+                                + "</form></body></html>").getBytes(StandardCharsets.UTF_8));
+                default -> responder(exchange, 404, html("No encontrado"));
+            }
+        }
+    }
+
+    private void simularLatencia() {
+        long espera = latenciaMs + (jitterMs > 0 ? ThreadLocalRandom.current().nextLong(jitterMs + 1) : 0);
+        if (espera <= 0) return;
+        try {
+            Thread.sleep(espera);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Map<String, String> leerFormulario(HttpExchange exchange) throws IOException {
+        String cuerpo = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        Map<String, String> formulario = new HashMap<>();
+        for (String par : cuerpo.split("&")) {
+            int igual = par.indexOf('=');
+            if (igual > 0) {
+                formulario.put(URLDecoder.decode(par.substring(0, igual), StandardCharsets.UTF_8),
+                        URLDecoder.decode(par.substring(igual + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return formulario;
+    }
+
+    private static void redirigir(HttpExchange exchange, String location) throws IOException {
+        exchange.getResponseHeaders().add("Location", location);
+        exchange.sendResponseHeaders(302, -1);
+    }
+
+    private static void responder(HttpExchange exchange, int status, byte[] cuerpo) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+        exchange.sendResponseHeaders(status, cuerpo.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(cuerpo);
+        }
+    }
+
+    private static byte[] html(String titulo) {
+        return ("<html><head><title>" + titulo + "</title></head><body><h1>" + titulo + "</h1></body></html>")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] leerFixture(String nombre) {
+        try (InputStream in = FakeIntranetServer.class.getResourceAsStream("/fixtures/" + nombre)) {
+            if (in == null) {
+                throw new IllegalStateException("No se encontró el fixture " + nombre);
+            }
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package cl.dnl.intranet.ubb_scraper.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Prueba de carga manual de punta a punta (no se ejecuta con "mvn test"): N alumnos simulados
+ * hacen, cada uno, login, dashboard y asignaturas parseadas de su primera carrera, repetido varias
+ * veces. Informa el throughput, los errores y los percentiles de latencia por endpoint.
+ *
+ * Pensada para correr contra la intranet falsa:
+ *
+ *   java ... FakeIntranetServer 9090 80 40 0.01
+ *   (levantar la aplicación con --app.intranet.base-url=http://localhost:9090/)
+ *   java ... ScrapingLoadRunner http://localhost:8080 100 5
+ *
+ * (URL base de la aplicación, alumnos concurrentes y rondas por alumno).
+ */
+public class ScrapingLoadRunner {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:8080";
+        int alumnos = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int rondas = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        Map<String, Metricas> metricas = new LinkedHashMap<>();
+        for (String endpoint : List.of("login", "dashboard", "asignaturas/parsed")) {
+            metricas.put(endpoint, new Metricas());
+        }
+
+        long inicio = System.nanoTime();
+        try (ExecutorService usuarios = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> tareas = new ArrayList<>();
+            for (int u = 0; u < alumnos; u++) {
+                // RUT distinto por alumno simulado, para que cada uno tenga su propia sesión.
+                String rut = (20_000_000 + u) + "-" + digitoVerificador(20_000_000 + u);
+                tareas.add(usuarios.submit(() -> {
+                    for (int r = 0; r < rondas; r++) {
+                        simularAlumno(client, baseUrl, rut, metricas);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> tarea : tareas) tarea.get();
+        }
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+
+        System.out.printf("%d alumnos x %d rondas en %.1f s%n", alumnos, rondas, segundos);
+        System.out.println("endpoint             peticiones  errores  req/s    p50(ms)  p95(ms)  p99(ms)  max(ms)");
+        metricas.forEach((endpoint, m) -> {
+            List<Long> ordenadas = m.ordenadas();
+            System.out.printf("%-19s  %10d  %7d  %7.1f  %7d  %7d  %7d  %7d%n",
+                    endpoint, ordenadas.size(), m.errores.get(), ordenadas.size() / segundos,
+                    percentil(ordenadas, 50), percentil(ordenadas, 95), percentil(ordenadas, 99),
+                    ordenadas.isEmpty() ? 0 : ordenadas.get(ordenadas.size() - 1));
+        });
+    }
+
+    private static void simularAlumno(HttpClient client, String baseUrl, String rut, Map<String, Metricas> metricas) {
+        String login = "{\"rut\":\"" + rut + "\",\"password\":\"clave-de-prueba\"}";
+        JsonNode respuestaLogin = llamar(client, post(baseUrl + "/api/login", login), metricas.get("login"));
+        if (respuestaLogin == null || !respuestaLogin.path("success").asBoolean()) return;
+        String sessionId = respuestaLogin.path("sessionId").asText();
+
+        JsonNode dashboard = llamar(client, HttpRequest.newBuilder(URI.create(baseUrl + "/api/dashboard/" + sessionId))
+                .timeout(Duration.ofSeconds(60)).GET().build(), metricas.get("dashboard"));
+        if (dashboard == null || dashboard.path("carreras").isEmpty()) return;
+
+        String carrera = dashboard.path("carreras").get(0).toString();
+        llamar(client, post(baseUrl + "/api/asignaturas/parsed/" + sessionId, carrera), metricas.get("asignaturas/parsed"));
+    }
+
+    private static HttpRequest post(String url, String json) {
+        return HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofSeconds(60))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+
+    // Hace la petición y registra su latencia; devuelve el JSON de la respuesta o null si falló.
+    private static JsonNode llamar(HttpClient client, HttpRequest request, Metricas metricas) {
+        long t0 = System.nanoTime();
+        try {
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                metricas.errores.incrementAndGet();
+                return null;
+            }
+            return JSON.readTree(response.body());
+        } catch (Exception e) {
+            metricas.errores.incrementAndGet();
+            return null;
+        } finally {
+            metricas.latenciasMs.add((System.nanoTime() - t0) / 1_000_000);
+        }
+    }
+
+    private static final class Metricas {
+        final List<Long> latenciasMs = Collections.synchronizedList(new ArrayList<>());
+        final AtomicInteger errores = new AtomicInteger();
+
+        List<Long> ordenadas() {
+            List<Long> copia = new ArrayList<>(latenciasMs);
+            Collections.sort(copia);
+            return copia;
+        }
+    }
+
+    private static long percentil(List<Long> ordenadas, int p) {
+        if (ordenadas.isEmpty()) return 0;
+        int indice = (int) Math.ceil(p / 100.0 * ordenadas.size()) - 1;
+        return ordenadas.get(Math.max(0, indice));
+    }
+
+    // Módulo 11, igual que el RUT chileno.
+    private static String digitoVerificador(int rut) {
+        int suma = 0;
+        int factor = 2;
+        for (int r = rut; r > 0; r /= 10) {
+            suma += (r % 10) * factor;
+            factor = factor == 7 ? 2 : factor + 1;
+        }
+        int dv = 11 - (suma % 11);
+        return dv == 11 ? "0" : dv == 10 ? "K" : String.valueOf(dv);
+    }
+}
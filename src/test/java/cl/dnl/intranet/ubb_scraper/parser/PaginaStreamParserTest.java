@@ -0,0 +1,86 @@
+package cl.dnl.intranet.ubb_scraper.parser;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PaginaStreamParserTest {
+
+    private static final String BASE_URI = "https://intranet.ubiobio.cl/";
+
+    // Página de una carrera con dos tablas de asignaturas, otra tabla entre medio que no es de
+    // asignaturas, una fila sin nombre, una sin botón de calificaciones y los campos ocultos al final.
+    private static final String DOS_TABLAS = """
+            <html><body>
+            <table class="table table-hover"><tbody>
+            <tr><td>CÁLCULO I</td><td><span title='Ver Calificaciones' onClick="abrir_CalifShow(1, 'MAT100', 2025, 1, 1, 'CÁLCULO I')"></span></td></tr>
+            <tr><td></td><td>separador</td></tr>
+            <tr><td>FÍSICA I</td><td><span title='Ver Calificaciones' onClick="abrir_CalifShow(1, 'FIS100', 2025, 1, 2, 'FÍSICA I')"></span></td></tr>
+            </tbody></table>
+            <table class="table"><tbody><tr><td>Leyenda</td></tr></tbody></table>
+            <h4>Asignaturas modulares</h4>
+            <table class="table table-hover"><tbody>
+            <tr><td>TALLER</td><td><span title='Ver Calificaciones' onClick="ver_calificacion_modular('TAL100', 1, 2025, 1)"></span></td></tr>
+            <tr><td>DEPORTES</td><td>Sin calificaciones</td></tr>
+            </tbody></table>
+            <form><input type="hidden" name="alu_rut" value="11111111"><input type="hidden" name="crr_codigo" value="29040">
+            <input type="hidden" name="pca_codigo" value="2"><input type="hidden" name="alc_ano_ingreso" value="2023">
+            <input type="hidden" name="alc_periodo" value="2"></form>
+            </body></html>
+            """;
+
+    @Test
+    void numeraDetALoLargoDeTodasLasTablas() throws IOException {
+        PaginaStreamParser.PaginaCarrera pagina = PaginaStreamParser.paginaCarrera(new StringReader(DOS_TABLAS), BASE_URI);
+
+        assertEquals(List.of("CÁLCULO I", "FÍSICA I", "TALLER", "DEPORTES"),
+                pagina.filas().stream().map(PaginaStreamParser.FilaAsignatura::nombre).toList());
+        assertEquals(List.of(0, 2, 3, 4), pagina.filas().stream().map(PaginaStreamParser.FilaAsignatura::det).toList());
+        assertEquals("11111111", pagina.datosFormulario().get("alu_rut"));
+        assertEquals(comoAntes(DOS_TABLAS), pagina);
+    }
+
+    @Test
+    void coincideConElParseoConJsoupEnLaPaginaDeAsignaturas() throws IOException {
+        String html = leerFixture("ver_calif_show.html");
+        assertEquals(comoAntes(html), PaginaStreamParser.paginaCarrera(new StringReader(html), BASE_URI));
+    }
+
+    // Lo que hacía getParsedAsignaturas antes del parseo en streaming, con el DOM completo.
+    private static PaginaStreamParser.PaginaCarrera comoAntes(String html) {
+        Document doc = Jsoup.parse(html, BASE_URI);
+        Elements rows = doc.select("table.table.table-hover tbody tr");
+        List<PaginaStreamParser.FilaAsignatura> filas = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i++) {
+            Element row = rows.get(i);
+            String nombre = row.select("td:first-child").text();
+            if (nombre.isEmpty()) continue;
+            Element boton = row.select("span[title='Ver Calificaciones']").first();
+            filas.add(new PaginaStreamParser.FilaAsignatura(nombre, boton == null ? null : boton.attr("onClick"), i));
+        }
+        Map<String, String> datos = new HashMap<>();
+        for (String campo : List.of("alu_rut", "crr_codigo", "pca_codigo", "alc_ano_ingreso", "alc_periodo")) {
+            datos.put(campo, doc.select("input[name=" + campo + "]").val());
+        }
+        return new PaginaStreamParser.PaginaCarrera(filas, datos);
+    }
+
+    private static String leerFixture(String nombre) throws IOException {
+        try (InputStream in = PaginaStreamParserTest.class.getResourceAsStream("/fixtures/" + nombre)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package cl.dnl.intranet.ubb_scraper.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EncryptionServiceTest {
+
+    private final EncryptionService service = new EncryptionService("clave-de-prueba", "5c0744940b5c369b");
+
+    @Test
+    void laHuellaDeUnMismoTextoEsSiempreLaMisma() {
+        assertEquals(service.huella("mi-clave"), service.huella("mi-clave"));
+        assertEquals(service.huella("mi-clave"), new EncryptionService("clave-de-prueba", "5c0744940b5c369b").huella("mi-clave"));
+        // A diferencia de la encriptación, que usa un IV aleatorio.
+        assertNotEquals(service.encrypt("mi-clave"), service.encrypt("mi-clave"));
+    }
+
+    @Test
+    void laHuellaDependeDeLaClaveDelServicio() {
+        assertNotEquals(service.huella("mi-clave"), new EncryptionService("otra-clave", "5c0744940b5c369b").huella("mi-clave"));
+        assertNotEquals(service.huella("mi-clave"), new EncryptionService("clave-de-prueba", "0123456789abcdef").huella("mi-clave"));
+    }
+
+    @Test
+    void coincideHuellaRechazaOtraClaveYLasHuellasFaltantes() {
+        String guardada = service.huella("mi-clave");
+        assertTrue(service.coincideHuella("mi-clave", guardada));
+        assertFalse(service.coincideHuella("otra-clave", guardada));
+        assertFalse(service.coincideHuella("mi-clave", null));
+    }
+
+    @Test
+    void desencriptaLoQueEncripta() {
+        assertEquals("mi-clave", service.decrypt(service.encrypt("mi-clave")));
+    }
+}
@@ -0,0 +1,148 @@
+package cl.dnl.intranet.ubb_scraper.service;
+
+import cl.dnl.intranet.ubb_scraper.dto.CarreraDto;
+import cl.dnl.intranet.ubb_scraper.model.EstadoBarrido;
+import cl.dnl.intranet.ubb_scraper.model.Usuario;
+import cl.dnl.intranet.ubb_scraper.repository.EstadoBarridoRepository;
+import cl.dnl.intranet.ubb_scraper.repository.UsuarioRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Pageable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class GradeChangeSweeperTest {
+
+    private static final CarreraDto CARRERA = new CarreraDto("INGENIERÍA", "29040-2-2023-2", "29040", "2", "2023", "2");
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final EncryptionService encryptionService = new EncryptionService("clave-de-prueba", "5c0744940b5c369b");
+    private final UsuarioRepository usuarios = mock(UsuarioRepository.class);
+    private final EstadoBarridoRepository estados = mock(EstadoBarridoRepository.class);
+    private final UbbScrapingService scrapingService = mock(UbbScrapingService.class);
+    private final ScrapingCoordinator coordinator = mock(ScrapingCoordinator.class);
+
+    @BeforeEach
+    void sesiones() throws Exception {
+        when(scrapingService.abrirSesionSegundoPlano(anyString(), anyString())).thenAnswer(i -> "S-" + i.getArgument(0));
+        when(scrapingService.getAvailableCareers(anyString())).thenReturn(List.of(CARRERA));
+    }
+
+    @AfterEach
+    void cerrar() {
+        executor.close();
+    }
+
+    private GradeChangeSweeper barrido(int lote, int concurrentes, double porSegundo) {
+        return new GradeChangeSweeper(usuarios, estados, encryptionService, scrapingService, coordinator, executor,
+                true, lote, concurrentes, porSegundo, 0);
+    }
+
+    private Usuario usuario(long id, String passwordEncriptada) {
+        Usuario usuario = new Usuario("2000000" + id + "-K", "ALUMNO " + id, passwordEncriptada, null);
+        usuario.setId(id);
+        return usuario;
+    }
+
+    private long ultimoIdGuardado(int guardados) {
+        ArgumentCaptor<EstadoBarrido> estado = ArgumentCaptor.forClass(EstadoBarrido.class);
+        verify(estados, times(guardados)).save(estado.capture());
+        return estado.getValue().getUltimoId();
+    }
+
+    @Test
+    void retomaDesdeElCursorGuardadoYVuelveAlPrincipio() throws Exception {
+        when(estados.findById("calificaciones")).thenReturn(Optional.of(new EstadoBarrido("calificaciones", 5)));
+        String clave = encryptionService.encrypt("clave");
+        when(usuarios.findByIdGreaterThanOrderByIdAsc(eq(5L), any(Pageable.class)))
+                .thenReturn(List.of(usuario(6, clave), usuario(7, clave)));
+        when(usuarios.findByIdGreaterThanOrderByIdAsc(eq(7L), any(Pageable.class))).thenReturn(List.of());
+        when(usuarios.findByIdGreaterThanOrderByIdAsc(eq(0L), any(Pageable.class))).thenReturn(List.of());
+        GradeChangeSweeper barrido = barrido(10, 2, 1000);
+
+        barrido.procesarLote();
+        assertEquals(7, ultimoIdGuardado(1));
+        verify(coordinator).refrescar("S-20000006-K", "20000006-K", CARRERA);
+        verify(coordinator).refrescar("S-20000007-K", "20000007-K", CARRERA);
+
+        // Sin más usuarios después del 7: la vuelta terminó y el cursor vuelve a 0.
+        barrido.procesarLote();
+        assertEquals(0, ultimoIdGuardado(2));
+
+        barrido.procesarLote();
+        verify(usuarios).findByIdGreaterThanOrderByIdAsc(eq(0L), any(Pageable.class));
+        // El cursor se lee de la BD una sola vez; después se mantiene en memoria.
+        verify(estados, times(1)).findById("calificaciones");
+    }
+
+    @Test
+    void saltaLosUsuariosCuyaClaveNoSePuedeDesencriptar() throws Exception {
+        when(estados.findById("calificaciones")).thenReturn(Optional.empty());
+        when(usuarios.findByIdGreaterThanOrderByIdAsc(eq(0L), any(Pageable.class)))
+                .thenReturn(List.of(usuario(1, "no es base64"), usuario(2, encryptionService.encrypt("clave"))));
+
+        barrido(10, 2, 1000).procesarLote();
+
+        verify(scrapingService, never()).abrirSesionSegundoPlano(eq("20000001-K"), anyString());
+        verify(scrapingService).abrirSesionSegundoPlano("20000002-K", "clave");
+        verify(scrapingService).cerrarSesionSegundoPlano("S-20000002-K");
+        assertEquals(2, ultimoIdGuardado(1));
+    }
+
+    @Test
+    void respetaElMaximoDeUsuariosConcurrentesYLaTasa() throws Exception {
+        when(estados.findById("calificaciones")).thenReturn(Optional.empty());
+        String clave = encryptionService.encrypt("clave");
+        List<Usuario> lote = new ArrayList<>();
+        for (long id = 1; id <= 6; id++) {
+            lote.add(usuario(id, clave));
+        }
+        when(usuarios.findByIdGreaterThanOrderByIdAsc(eq(0L), any(Pageable.class))).thenReturn(lote);
+
+        AtomicInteger enCurso = new AtomicInteger();
+        AtomicInteger maximo = new AtomicInteger();
+        List<Long> inicios = Collections.synchronizedList(new ArrayList<>());
+        when(scrapingService.abrirSesionSegundoPlano(anyString(), anyString())).thenAnswer(i -> {
+            inicios.add(System.nanoTime());
+            maximo.accumulateAndGet(enCurso.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(100);
+            } finally {
+                enCurso.decrementAndGet();
+            }
+            return "S-" + i.getArgument(0);
+        });
+
+        // 20 usuarios por segundo: uno cada 50 ms.
+        barrido(10, 2, 20).procesarLote();
+
+        assertEquals(6, inicios.size());
+        assertTrue(maximo.get() <= 2, "usuarios a la vez: " + maximo.get());
+        List<Long> ordenados = new ArrayList<>(inicios);
+        Collections.sort(ordenados);
+        for (int i = 1; i < ordenados.size(); i++) {
+            long separacion = ordenados.get(i) - ordenados.get(i - 1);
+            assertTrue(separacion >= TimeUnit.MILLISECONDS.toNanos(40), "separación de " + separacion / 1_000_000 + " ms");
+        }
+    }
+}
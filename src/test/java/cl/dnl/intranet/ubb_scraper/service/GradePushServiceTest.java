@@ -0,0 +1,57 @@
+package cl.dnl.intranet.ubb_scraper.service;
+
+import cl.dnl.intranet.ubb_scraper.dto.AsignaturaDto;
+import cl.dnl.intranet.ubb_scraper.event.CalificacionesCambiadasEvent;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+
+class GradePushServiceTest {
+
+    private static CalificacionesCambiadasEvent cambio(String rut, double promedio) {
+        return new CalificacionesCambiadasEvent(rut, "29040-2-2023-2", "2025", "1", List.of(new AsignaturaDto("CÁLCULO", promedio)));
+    }
+
+    @Test
+    void desconectaSoloAlSuscriptorCuyaColaSeLlena() {
+        // El executor no corre los hilos de envío: las colas no se vacían, como con un cliente que no lee.
+        GradePushService push = new GradePushService(mock(ExecutorService.class), 2, 60_000);
+        SseEmitter lento = push.suscribir("20000000-5");
+        push.alCambiarCalificaciones(cambio("20000000-5", 5.0));
+        push.alCambiarCalificaciones(cambio("20000000-5", 5.1));
+        SseEmitter nuevo = push.suscribir("20000000-5");
+        SseEmitter otroAlumno = push.suscribir("20000002-1");
+
+        // El tercer cambio ya no cabe en la cola del primero: se cierra su conexión y no la de los demás.
+        push.alCambiarCalificaciones(cambio("20000000-5", 5.2));
+
+        assertThrows(IllegalStateException.class, () -> lento.send("x"));
+        assertDoesNotThrow(() -> nuevo.send("x"));
+        assertDoesNotThrow(() -> otroAlumno.send("x"));
+    }
+
+    @Test
+    void losLatidosNoLlenanLaCola() {
+        GradePushService push = new GradePushService(mock(ExecutorService.class), 2, 60_000);
+        SseEmitter emitter = push.suscribir("20000000-5");
+        for (int i = 0; i < 5; i++) {
+            push.enviarLatidos();
+        }
+        // Solo hay un latido pendiente, así que todavía caben cambios sin desconectar al cliente.
+        push.alCambiarCalificaciones(cambio("20000000-5", 5.0));
+
+        assertDoesNotThrow(() -> emitter.send("x"));
+    }
+
+    @Test
+    void ignoraLosCambiosDeAlumnosSinSuscriptores() {
+        GradePushService push = new GradePushService(mock(ExecutorService.class), 1, 60_000);
+        assertDoesNotThrow(() -> push.alCambiarCalificaciones(cambio("20000000-5", 5.0)));
+    }
+}
@@ -0,0 +1,109 @@
+package cl.dnl.intranet.ubb_scraper.service;
+
+import cl.dnl.intranet.ubb_scraper.dto.AsignaturaDto;
+import cl.dnl.intranet.ubb_scraper.dto.CalificacionDto;
+import cl.dnl.intranet.ubb_scraper.event.CalificacionesCambiadasEvent;
+import cl.dnl.intranet.ubb_scraper.model.AsignaturaSnapshot;
+import cl.dnl.intranet.ubb_scraper.repository.AsignaturaSnapshotRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class GradeSnapshotServiceTest {
+
+    private static final String RUT = "20000000-5";
+    private static final String CARRERA = "29040-2-2023-2";
+
+    private final AsignaturaSnapshotRepository repository = mock(AsignaturaSnapshotRepository.class);
+    private final ApplicationEventPublisher eventos = mock(ApplicationEventPublisher.class);
+    private final GradeSnapshotService service =
+            new GradeSnapshotService(repository, eventos, mock(PlatformTransactionManager.class));
+
+    private static AsignaturaSnapshot fila(int orden, AsignaturaDto a, boolean inmutable) {
+        return new AsignaturaSnapshot(RUT, CARRERA, "2025", "1", orden, a.nombre(), a.promedio(), a.calificaciones(),
+                Instant.parse("2025-05-01T12:00:00Z"), inmutable);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<AsignaturaSnapshot> filasGuardadas() {
+        ArgumentCaptor<List<AsignaturaSnapshot>> filas = ArgumentCaptor.forClass(List.class);
+        verify(repository).saveAll(filas.capture());
+        return filas.getValue();
+    }
+
+    @Test
+    void publicaLasAsignaturasNuevasYLasQueCambiaron() {
+        AsignaturaDto calculo = new AsignaturaDto("CÁLCULO", 5.0, List.of(new CalificacionDto("Certamen 1", 5.0)));
+        AsignaturaDto fisica = new AsignaturaDto("FÍSICA", 4.0, List.of(new CalificacionDto("Certamen 1", 4.0)));
+        AsignaturaDto quimica = new AsignaturaDto("QUÍMICA", 6.0, List.of(new CalificacionDto("Certamen 1", 6.0)));
+        when(repository.findByRutAndCarreraAndAnoAndPeriodoOrderByOrden(RUT, CARRERA, "2025", "1"))
+                .thenReturn(List.of(fila(0, calculo, false), fila(1, fisica, false), fila(2, quimica, false)));
+
+        AsignaturaDto calculoNuevo = new AsignaturaDto("CÁLCULO", 5.5,
+                List.of(new CalificacionDto("Certamen 1", 5.0), new CalificacionDto("Certamen 2", 6.0)));
+        AsignaturaDto quimicaVacia = new AsignaturaDto("QUÍMICA", 0.0); // su página falló
+        AsignaturaDto ingles = new AsignaturaDto("INGLÉS", 6.5, List.of(new CalificacionDto("Oral", 6.5)));
+        List<AsignaturaDto> guardadas = service.guardar(RUT, CARRERA, "2025", "1",
+                List.of(calculoNuevo, fisica, quimicaVacia, ingles));
+
+        // La que vino vacía conserva el valor anterior y no cuenta como cambio.
+        assertEquals(List.of(calculoNuevo, fisica, quimica, ingles), guardadas);
+        ArgumentCaptor<CalificacionesCambiadasEvent> evento = ArgumentCaptor.forClass(CalificacionesCambiadasEvent.class);
+        verify(eventos).publishEvent(evento.capture());
+        assertEquals(List.of(calculoNuevo, ingles), evento.getValue().cambios());
+        verify(repository).deleteSnapshot(RUT, CARRERA, "2025", "1");
+        assertEquals(List.of(0, 1, 2, 3), filasGuardadas().stream().map(AsignaturaSnapshot::getOrden).toList());
+    }
+
+    @Test
+    void elPrimerSnapshotNoPublicaCambios() {
+        when(repository.findByRutAndCarreraAndAnoAndPeriodoOrderByOrden(anyString(), anyString(), anyString(), anyString()))
+                .thenReturn(List.of());
+        service.guardar(RUT, CARRERA, "2025", "1", List.of(new AsignaturaDto("CÁLCULO", 5.0)));
+        verify(eventos, never()).publishEvent(any());
+    }
+
+    @Test
+    void unPeriodoCerradoSinAsignaturasQuedaComoMarcadorInmutable() {
+        when(repository.findByRutAndCarreraAndAnoAndPeriodoOrderByOrden(RUT, CARRERA, "2024", "2")).thenReturn(List.of());
+
+        assertEquals(List.of(), service.guardar(RUT, CARRERA, "2024", "2", List.of(), true));
+
+        List<AsignaturaSnapshot> filas = filasGuardadas();
+        assertEquals(1, filas.size());
+        assertEquals(-1, filas.get(0).getOrden());
+        assertTrue(filas.get(0).isInmutable());
+
+        // Al leerlo, el periodo existe pero sin asignaturas.
+        when(repository.findByRutAndCarreraAndAnoAndPeriodoOrderByOrden(RUT, CARRERA, "2024", "2")).thenReturn(filas);
+        when(repository.findByRutAndInmutableTrueOrderByCarreraAscAnoAscPeriodoAscOrdenAsc(RUT)).thenReturn(filas);
+        assertEquals(List.of(), service.obtener(RUT, CARRERA, "2024", "2").orElseThrow().asignaturas());
+        assertEquals(Map.of(new GradeSnapshotService.PeriodoGuardado(CARRERA, "2024", "2"), List.of()),
+                service.obtenerInmutables(RUT));
+    }
+
+    @Test
+    void noReemplazaUnSnapshotInmutable() {
+        AsignaturaDto calculo = new AsignaturaDto("CÁLCULO", 5.0);
+        when(repository.findByRutAndCarreraAndAnoAndPeriodoOrderByOrden(RUT, CARRERA, "2025", "1"))
+                .thenReturn(List.of(fila(0, calculo, true)));
+
+        assertEquals(List.of(calculo), service.guardar(RUT, CARRERA, "2025", "1", List.of(new AsignaturaDto("CÁLCULO", 6.0)), true));
+        verify(repository, never()).deleteSnapshot(anyString(), anyString(), anyString(), anyString());
+        verify(eventos, never()).publishEvent(any());
+    }
+}
@@ -0,0 +1,66 @@
+package cl.dnl.intranet.ubb_scraper.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HedgedFetcherTest {
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @AfterEach
+    void cerrar() {
+        executor.close();
+        Plazo.limpiar();
+    }
+
+    private HedgedFetcher fetcher() {
+        MockEnvironment env = new MockEnvironment()
+                .withProperty("app.intranet.politica.prueba.cobertura", "true")
+                .withProperty("app.intranet.politica.prueba.retraso-inicial-ms", "50")
+                .withProperty("app.intranet.politica.prueba.espera-reintento-ms", "10");
+        return new HedgedFetcher(executor, new SimpleMeterRegistry(), env);
+    }
+
+    @Test
+    void usaLaCopiaSiLaOriginalTarda() throws Exception {
+        AtomicInteger llamadas = new AtomicInteger();
+        long inicio = System.nanoTime();
+        String resultado = fetcher().conCobertura("prueba", () -> {
+            if (llamadas.getAndIncrement() == 0) {
+                try {
+                    Thread.sleep(5000);
+                } catch (InterruptedException e) {
+                    throw new IOException("cancelada", e);
+                }
+                return "original";
+            }
+            return "copia";
+        });
+        assertEquals("copia", resultado);
+        assertEquals(2, llamadas.get());
+        assertTrue(System.nanoTime() - inicio < TimeUnit.SECONDS.toNanos(2));
+    }
+
+    @Test
+    void noReintentaSiNoQuedaPlazo() {
+        AtomicInteger llamadas = new AtomicInteger();
+        Plazo.fijar(20, TimeUnit.MILLISECONDS);
+        assertThrows(IOException.class, () -> fetcher().conReintentos("prueba", () -> {
+            llamadas.incrementAndGet();
+            throw new IOException("HTTP 500");
+        }));
+        assertEquals(1, llamadas.get());
+    }
+}
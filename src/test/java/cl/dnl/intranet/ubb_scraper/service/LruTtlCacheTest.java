@@ -0,0 +1,64 @@
+package cl.dnl.intranet.ubb_scraper.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class LruTtlCacheTest {
+
+    @Test
+    void descartaLaEntradaUsadaHaceMasTiempo() {
+        LruTtlCache<String, Integer> cache = new LruTtlCache<>(2, 60_000);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.get("a"); // "a" pasa a ser la más reciente
+        cache.put("c", 3);
+
+        assertNull(cache.get("b"));
+        assertNull(cache.getAunVencido("b"));
+        assertEquals(1, cache.get("a"));
+        assertEquals(3, cache.get("c"));
+    }
+
+    @Test
+    void unaEntradaVencidaSoloSeEntregaComoRespaldo() throws Exception {
+        LruTtlCache<String, Integer> cache = new LruTtlCache<>(10, 20);
+        cache.put("a", 1);
+        assertEquals(1, cache.get("a"));
+
+        Thread.sleep(50);
+        assertNull(cache.get("a"));
+        assertEquals(1, cache.getAunVencido("a"));
+
+        // Al volver a guardarla queda vigente otra vez.
+        cache.put("a", 2);
+        assertEquals(2, cache.get("a"));
+    }
+
+    @Test
+    void invalidateBorraTambienElRespaldo() {
+        LruTtlCache<String, Integer> cache = new LruTtlCache<>(10, 60_000);
+        cache.put("a", 1);
+        cache.invalidate("a");
+        assertNull(cache.get("a"));
+        assertNull(cache.getAunVencido("a"));
+    }
+
+    @Test
+    void publicaAciertosFallosYTamano() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        LruTtlCache<String, Integer> cache = new LruTtlCache<String, Integer>(10, 20).registrarMetricas(registry, "prueba");
+        cache.put("a", 1);
+        cache.get("a");
+        cache.get("b");
+        Thread.sleep(50);
+        cache.get("a"); // vencida: cuenta como fallo
+        cache.getAunVencido("a"); // no cuenta
+
+        assertEquals(1, registry.get("cache.gets").tag("cache", "prueba").tag("result", "hit").functionCounter().count());
+        assertEquals(2, registry.get("cache.gets").tag("cache", "prueba").tag("result", "miss").functionCounter().count());
+        assertEquals(1, registry.get("cache.size").tag("cache", "prueba").gauge().value());
+    }
+}
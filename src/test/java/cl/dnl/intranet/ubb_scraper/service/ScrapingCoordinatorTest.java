@@ -0,0 +1,28 @@
+package cl.dnl.intranet.ubb_scraper.service;
+
+import cl.dnl.intranet.ubb_scraper.dto.CarreraDto;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ScrapingCoordinatorTest {
+
+    private static final CarreraDto CARRERA = new CarreraDto("INGENIERÍA", "29040-2-2023-2", "29040", "2", "2023", "2");
+
+    @Test
+    void enumeraLosPeriodosDesdeElIngresoHastaElActual() {
+        List<String> periodos = ScrapingCoordinator.periodosCursados(CARRERA, "2025", "1").stream()
+                .map(p -> p.ano() + "-" + p.periodo())
+                .toList();
+        assertEquals(List.of("2025-1", "2024-2", "2024-1", "2023-2"), periodos);
+    }
+
+    @Test
+    void soloElPeriodoActualSiElIngresoNoEsUnNumero() {
+        CarreraDto sinIngreso = new CarreraDto("INGENIERÍA", "29040-2--1", "29040", "2", "", "1");
+        assertEquals(List.of(new GradeSnapshotService.PeriodoGuardado("29040-2--1", "2025", "2")),
+                ScrapingCoordinator.periodosCursados(sinIngreso, "2025", "2"));
+    }
+}
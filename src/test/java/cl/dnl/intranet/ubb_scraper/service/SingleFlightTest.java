@@ -0,0 +1,112 @@
+package cl.dnl.intranet.ubb_scraper.service;
+
+import cl.dnl.intranet.ubb_scraper.config.ContextoExecutorService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleFlightTest {
+
+    // Como en la aplicación, el executor pasa el Plazo de quien envía cada tarea.
+    private final ExecutorService executor = new ContextoExecutorService(Executors.newVirtualThreadPerTaskExecutor());
+    private final SingleFlight<String, String> singleFlight = new SingleFlight<>(executor);
+
+    @AfterEach
+    void cerrar() {
+        executor.close();
+        Plazo.limpiar();
+    }
+
+    @Test
+    void lasLlamadasConcurrentesCompartenUnaEjecucion() throws Exception {
+        AtomicInteger ejecuciones = new AtomicInteger();
+        CountDownLatch liberar = new CountDownLatch(1);
+        CountDownLatch listos = new CountDownLatch(8);
+        List<Future<String>> llamadas = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            llamadas.add(executor.submit(() -> {
+                listos.countDown();
+                return singleFlight.ejecutar("clave", () -> {
+                    ejecuciones.incrementAndGet();
+                    esperar(liberar);
+                    return "valor";
+                });
+            }));
+        }
+        listos.await();
+        Thread.sleep(100);
+        liberar.countDown();
+
+        for (Future<String> llamada : llamadas) {
+            assertEquals("valor", llamada.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, ejecuciones.get());
+    }
+
+    @Test
+    void elPlazoDeQuienEsperaNoCancelaElTrabajoCompartido() throws Exception {
+        CountDownLatch empezo = new CountDownLatch(1);
+        CountDownLatch liberar = new CountDownLatch(1);
+        AtomicBoolean interrumpido = new AtomicBoolean();
+        AtomicReference<Long> plazoDelTrabajo = new AtomicReference<>(-1L);
+        SingleFlight.Llamada<String> llamada = () -> {
+            plazoDelTrabajo.set(Plazo.actual());
+            empezo.countDown();
+            try {
+                liberar.await();
+            } catch (InterruptedException e) {
+                interrumpido.set(true);
+                throw new IOException(e);
+            }
+            return "valor";
+        };
+
+        // Quien inicia el trabajo tiene un plazo de 50 ms; otro se une sin plazo.
+        Future<?> corto = executor.submit(() -> {
+            Plazo.fijar(50, TimeUnit.MILLISECONDS);
+            return assertThrows(Plazo.PlazoAgotadoException.class, () -> singleFlight.ejecutar("clave", llamada));
+        });
+        empezo.await();
+        Future<String> largo = executor.submit(() -> singleFlight.ejecutar("clave", () -> "otra ejecución"));
+
+        corto.get(5, TimeUnit.SECONDS);
+        liberar.countDown();
+        assertEquals("valor", largo.get(5, TimeUnit.SECONDS));
+        assertFalse(interrumpido.get());
+        assertNull(plazoDelTrabajo.get());
+    }
+
+    @Test
+    void comparteUnErrorYLiberaLaClave() throws Exception {
+        assertThrows(AssertionError.class, () -> singleFlight.ejecutar("clave", () -> {
+            throw new AssertionError("falla");
+        }));
+        // La clave quedó libre: la siguiente llamada se ejecuta de nuevo.
+        assertEquals("valor", singleFlight.ejecutar("clave", () -> "valor"));
+    }
+
+    private static void esperar(CountDownLatch latch) throws IOException {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+}
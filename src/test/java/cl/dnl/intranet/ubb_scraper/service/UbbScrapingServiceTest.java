@@ -0,0 +1,129 @@
+package cl.dnl.intranet.ubb_scraper.service;
+
+import cl.dnl.intranet.ubb_scraper.dto.AsignaturaDto;
+import cl.dnl.intranet.ubb_scraper.dto.DatosAlumnoDto;
+import cl.dnl.intranet.ubb_scraper.loadtest.FakeIntranetServer;
+import cl.dnl.intranet.ubb_scraper.repository.UsuarioRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Flujo completo de scraping (login, datos del alumno y notas) contra la intranet falsa.
+class UbbScrapingServiceTest {
+
+    private static FakeIntranetServer intranet;
+    private static ExecutorService executor;
+    private static SimpleMeterRegistry metricas;
+    private static UbbScrapingService service;
+
+    @BeforeAll
+    static void levantarIntranet() throws Exception {
+        intranet = new FakeIntranetServer(0, 0, 0, 0.0).iniciar();
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+
+        metricas = new SimpleMeterRegistry();
+        UsuarioRepository usuarios = mock(UsuarioRepository.class);
+        when(usuarios.findByRut(anyString())).thenReturn(Optional.empty());
+        service = new UbbScrapingService(usuarios,
+                new EncryptionService("clave-de-prueba", "5c0744940b5c369b"),
+                new IntranetHttpClient(executor, metricas,
+                        new UpstreamGuard(metricas, 8, 2, 8, 3000, 64, 2000, 20, 10, 0.5, 30000), 5000, 5000),
+                new HedgedFetcher(executor, metricas, new StandardEnvironment()),
+                new SesionUpstreamPool(metricas, 10, 60000, 60000),
+                executor, metricas, 4, 10000, 10, 60000, 100, 60000, 100, 60000, intranet.baseUrl());
+    }
+
+    @AfterAll
+    static void detenerIntranet() {
+        intranet.close();
+        executor.close();
+    }
+
+    @Test
+    void calculaLosPromediosDeLaPrimeraCarrera() throws Exception {
+        Map<String, Object> login = service.performLogin("20000000-5", "clave-de-prueba");
+        assertEquals(true, login.get("success"));
+        String sessionId = (String) login.get("sessionId");
+
+        DatosAlumnoDto datos = service.getDatosAlumno(sessionId);
+        assertEquals("ALUMNO DE PRUEBA", datos.nombres());
+        assertEquals(2, datos.carreras().size());
+        assertEquals(FakeIntranetServer.PERIODO, service.obtenerPeriodoActual(sessionId));
+
+        List<AsignaturaDto> asignaturas = service.getParsedAsignaturas(sessionId, datos.carreras().get(0));
+        assertEquals(8, asignaturas.size());
+        assertEquals(4.3965, asignaturas.get(0).promedio(), 1e-9);  // ramo normal
+        assertEquals(5.6, asignaturas.get(4).promedio(), 1e-9);     // ramo modular
+        assertEquals(0.0, asignaturas.get(7).promedio());           // sin botón de calificaciones
+        assertFalse(asignaturas.get(0).calificaciones().isEmpty());
+    }
+
+    @Test
+    void noVuelveAParsearPaginasDeNotasSinCambios() throws Exception {
+        Map<String, Object> login = service.performLogin("20000002-1", "clave-de-prueba");
+        String sessionId = (String) login.get("sessionId");
+        DatosAlumnoDto datos = service.getDatosAlumno(sessionId);
+
+        List<AsignaturaDto> primera = service.getParsedAsignaturas(sessionId, datos.carreras().get(0));
+        double antes = metricas.counter("scraping.notas.sin-cambios").count();
+        List<AsignaturaDto> segunda = service.getParsedAsignaturas(sessionId, datos.carreras().get(0));
+
+        assertEquals(primera, segunda);
+        assertEquals(7, metricas.counter("scraping.notas.sin-cambios").count() - antes);
+    }
+
+    @Test
+    void recalculaElPromedioSiCambianLosFactoresConLaMismaEstructura() throws Exception {
+        Map<String, Object> login = service.performLogin("20000004-8", "clave-de-prueba");
+        String sessionId = (String) login.get("sessionId");
+        DatosAlumnoDto datos = service.getDatosAlumno(sessionId);
+
+        List<AsignaturaDto> antes = service.getParsedAsignaturas(sessionId, datos.carreras().get(0));
+        assertEquals(4.3965, antes.get(0).promedio(), 1e-9);
+
+        // Mismas evaluaciones y celdas de notas; solo cambian dos factores (Certamen 1 y Examen).
+        byte[] original = intranet.modificarPaginaNormal(
+                "Certamen 1</td><td>Evaluación</td><td>25", "Certamen 1</td><td>Evaluación</td><td>35");
+        try {
+            intranet.modificarPaginaNormal("Examen</td><td>Evaluación</td><td>15", "Examen</td><td>Evaluación</td><td>5");
+            List<AsignaturaDto> despues = service.getParsedAsignaturas(sessionId, datos.carreras().get(0));
+            assertEquals(4.8465, despues.get(0).promedio(), 1e-9);
+        } finally {
+            intranet.restaurarPaginaNormal(original);
+        }
+    }
+
+    @Test
+    void consultaUnPeriodoAnterior() throws Exception {
+        Map<String, Object> login = service.performLogin("20000003-K", "clave-de-prueba");
+        String sessionId = (String) login.get("sessionId");
+        DatosAlumnoDto datos = service.getDatosAlumno(sessionId);
+
+        UbbScrapingService.AsignaturasPeriodo periodo =
+                service.getAsignaturasPeriodo(sessionId, datos.carreras().get(0), "2024", "1");
+        assertEquals(8, periodo.asignaturas().size());
+        assertTrue(periodo.completas());
+    }
+
+    @Test
+    void rechazaUnaClaveIncorrecta() throws Exception {
+        Map<String, Object> login = service.performLogin("20000001-3", FakeIntranetServer.CLAVE_RECHAZADA);
+        assertEquals(false, login.get("success"));
+        assertTrue(intranet.peticiones() > 0);
+    }
+}
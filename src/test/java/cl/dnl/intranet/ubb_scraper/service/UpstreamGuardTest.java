@@ -0,0 +1,84 @@
+package cl.dnl.intranet.ubb_scraper.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class UpstreamGuardTest {
+
+    // limite 2 fijo, sin cola, ventana de 4 con mínimo 4 peticiones, umbral 50%, apertura 100 ms.
+    private UpstreamGuard guard() {
+        return new UpstreamGuard(new SimpleMeterRegistry(), 2, 2, 2, 1000, 0, 0, 4, 4, 0.5, 100);
+    }
+
+    @Test
+    void rechazaSinEsperarCuandoNoHayTurnoNiCola() throws Exception {
+        UpstreamGuard guard = guard();
+        UpstreamGuard.Turno turno = guard.entrar();
+        guard.entrar();
+        assertThrows(IntranetNoDisponibleException.class, guard::entrar);
+        guard.salir(turno);
+        assertDoesNotThrow(guard::entrar);
+    }
+
+    @Test
+    void abreElCircuitoYLoCierraTrasUnaPruebaExitosa() throws Exception {
+        UpstreamGuard guard = guard();
+        for (int i = 0; i < 4; i++) {
+            UpstreamGuard.Turno turno = guard.entrar();
+            guard.registrar(turno, i % 2 == 0, 1_000_000);
+            guard.salir(turno);
+        }
+        assertThrows(IntranetNoDisponibleException.class, guard::entrar);
+
+        Thread.sleep(150);
+        UpstreamGuard.Turno prueba = guard.entrar();
+        assertThrows(IntranetNoDisponibleException.class, guard::entrar);
+        guard.registrar(prueba, false, 1_000_000);
+        guard.salir(prueba);
+        assertDoesNotThrow(guard::entrar);
+    }
+
+    @Test
+    void soloLaPeticionDePruebaLiberaLaPrueba() throws Exception {
+        UpstreamGuard guard = guard();
+        // Una petición que salió antes de abrirse el circuito y termina durante la prueba.
+        UpstreamGuard.Turno antigua = guard.entrar();
+        for (int i = 0; i < 4; i++) {
+            UpstreamGuard.Turno turno = guard.entrar();
+            guard.registrar(turno, true, 1_000_000);
+            guard.salir(turno);
+        }
+
+        Thread.sleep(150);
+        UpstreamGuard.Turno prueba = guard.entrar();
+        guard.registrar(antigua, false, 1_000_000);
+        guard.salir(antigua);
+        assertThrows(IntranetNoDisponibleException.class, guard::entrar);
+
+        guard.salir(prueba);
+        assertDoesNotThrow(guard::entrar);
+    }
+
+    @Test
+    void bajaElLimiteUnaSolaVezPorRonda() throws Exception {
+        // limite inicial 4 (mínimo 1), sin cola y sin circuito que se abra.
+        UpstreamGuard guard = new UpstreamGuard(new SimpleMeterRegistry(), 4, 1, 4, 1000, 0, 0, 20, 20, 1.0, 100);
+        UpstreamGuard.Turno[] turnos = new UpstreamGuard.Turno[4];
+        for (int i = 0; i < turnos.length; i++) {
+            turnos[i] = guard.entrar();
+        }
+        // Las cuatro respuestas lentas salieron antes de la primera bajada: el límite queda en 3
+        // (4 × 0,8) y no en 1.
+        for (UpstreamGuard.Turno turno : turnos) {
+            guard.registrar(turno, true, 2_000_000_000L);
+            guard.salir(turno);
+        }
+        guard.entrar();
+        guard.entrar();
+        guard.entrar();
+        assertThrows(IntranetNoDisponibleException.class, guard::entrar);
+    }
+}